@@ -0,0 +1,94 @@
+package dong.anqi.grocery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long each checker takes to classify a page once it has it, from recorded fixtures. Where a
+ * checker has both a browser and a fast-path reading of the same page, both are measured, so the
+ * extraction strategies can be compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassificationBenchmark {
+  private Map<String, Object> instacartPanelScriptResult;
+  private ElementSnapshot instacartPanel;
+  private ElementSnapshot instacartFullPanel;
+  private String instacartDeliveryContent;
+  private List<String> shiptAvailabilityTexts;
+  private String weeeHomePage;
+  private List<ElementSnapshot> weeeDateCells;
+
+  @Setup
+  public void loadFixtures() {
+    instacartPanelScriptResult = Fixtures.readScriptResult("instacart-delivery-panel.json");
+    instacartPanel = ElementSnapshot.fromScriptResult(instacartPanelScriptResult);
+    instacartFullPanel = Fixtures.readSnapshot("instacart-delivery-panel-full.json");
+    instacartDeliveryContent = Fixtures.read("instacart-delivery-content.json");
+    shiptAvailabilityTexts = Fixtures.readLines("shipt-availability.txt");
+    weeeHomePage = Fixtures.read("weee-home.html");
+    weeeDateCells = WeeeDateAvailableChecker.parseDateCells(weeeHomePage);
+  }
+
+  // Results of package-private types go to a Blackhole, since JMH's generated code lives in
+  // another package
+
+  @Benchmark
+  public void instacartPanel(Blackhole blackhole) {
+    blackhole.consume(BaseInstacartSlotChecker.summarizeDeliveryPanel(instacartPanel));
+  }
+
+  @Benchmark
+  public void instacartFullyBookedPanel(Blackhole blackhole) {
+    blackhole.consume(BaseInstacartSlotChecker.summarizeDeliveryPanel(instacartFullPanel));
+  }
+
+  /** Includes converting the script result, which the browser path pays on every check. */
+  @Benchmark
+  public void instacartPanelFromScriptResult(Blackhole blackhole) {
+    blackhole.consume(BaseInstacartSlotChecker.summarizeDeliveryPanel(
+        ElementSnapshot.fromScriptResult(instacartPanelScriptResult)));
+  }
+
+  @Benchmark
+  public void instacartDeliveryContent(Blackhole blackhole) throws Exception {
+    blackhole.consume(BaseInstacartSlotChecker.parseDeliveryContent(instacartDeliveryContent));
+  }
+
+  @Benchmark
+  public void shiptAvailability(Blackhole blackhole) {
+    for (String text : shiptAvailabilityTexts) {
+      blackhole.consume(ShiptSlotChecker.isSlotAvailable(text));
+    }
+  }
+
+  @Benchmark
+  public Optional<ElementSnapshot> weeeDateCells() {
+    return WeeeDateAvailableChecker.findAvailableDate(weeeDateCells, false);
+  }
+
+  /** The fast path's version: find the cells in the server-rendered page first. */
+  @Benchmark
+  public Optional<ElementSnapshot> weeeHomePage() {
+    return WeeeDateAvailableChecker.findAvailableDate(
+        WeeeDateAvailableChecker.parseDateCells(weeeHomePage), false);
+  }
+}
@@ -0,0 +1,84 @@
+package dong.anqi.grocery;
+
+import twitter4j.JSONArray;
+import twitter4j.JSONException;
+import twitter4j.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the pages and DOM snapshots under {@code benchmarks/fixtures}. Snapshots are stored as the
+ * JSON that {@link ElementSnapshot#EXTRACT_SCRIPT} returns, so they go through the same conversion
+ * as live ones.
+ * <p>
+ * Benchmarks run from the project root, e.g. by running {@code org.openjdk.jmh.Main} in this
+ * module; set {@code grocery.fixtures} to run from elsewhere.
+ */
+enum Fixtures {
+  ;
+
+  private static final Path DIRECTORY =
+      Paths.get(System.getProperty("grocery.fixtures", "benchmarks/fixtures"));
+
+  static String read(String name) {
+    try {
+      return Files.readString(DIRECTORY.resolve(name), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static List<String> readLines(String name) {
+    try {
+      return Files.readAllLines(DIRECTORY.resolve(name), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** The raw script result, as WebDriver would hand it over. */
+  @SuppressWarnings("unchecked")
+  static Map<String, Object> readScriptResult(String name) {
+    try {
+      return (Map<String, Object>) toJava(new JSONObject(read(name)));
+    } catch (JSONException e) {
+      throw new IllegalArgumentException(name + " is not valid JSON", e);
+    }
+  }
+
+  static ElementSnapshot readSnapshot(String name) {
+    return ElementSnapshot.fromScriptResult(readScriptResult(name));
+  }
+
+  private static Object toJava(Object json) throws JSONException {
+    if (json instanceof JSONObject) {
+      JSONObject object = (JSONObject) json;
+      Map<String, Object> map = new HashMap<>();
+      for (Iterator<?> keys = object.keys(); keys.hasNext(); ) {
+        String key = keys.next().toString();
+        map.put(key, toJava(object.get(key)));
+      }
+      return map;
+    } else if (json instanceof JSONArray) {
+      JSONArray array = (JSONArray) json;
+      List<Object> list = new ArrayList<>();
+      for (int i = 0; i < array.length(); i++) {
+        list.add(toJava(array.get(i)));
+      }
+      return list;
+    } else if (json == JSONObject.NULL) {
+      return null;
+    }
+    return json;
+  }
+}
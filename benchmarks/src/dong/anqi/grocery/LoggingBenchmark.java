@@ -0,0 +1,92 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * What a log call costs the checker thread making it, with several checkers logging at once:
+ * {@link AsyncFileLogger} against writing and flushing each line on the caller's thread, which is
+ * how the runner used to log.
+ * <p>
+ * At this rate the writer can't keep up and the async logger drops lines, so its numbers are the
+ * cost of handing off a line, not of getting it to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingBenchmark {
+  private static final String LINE = "2026-10-17 06:02:13 Instacart H Mart: " +
+      "Spots available for Today 9am - 11am & 5 more on 2 days";
+
+  private Path logDirectory;
+  private AsyncFileLogger asyncLogger;
+  private Logger synchronousLogger;
+  private BufferedWriter synchronousWriter;
+
+  @Setup
+  public void createLoggers() throws IOException {
+    logDirectory = Files.createTempDirectory("grocery-log-bench");
+    asyncLogger = new AsyncFileLogger(logDirectory.resolve("async"), 8192, 64L * 1024 * 1024,
+        Duration.ofHours(24), false, ImmutableList.of());
+
+    synchronousWriter = Files.newBufferedWriter(
+        logDirectory.resolve("synchronous.txt"), StandardCharsets.UTF_8);
+    synchronousLogger = new Logger() {
+      @Override
+      public synchronized void log(String s) {
+        try {
+          synchronousWriter.write(s);
+          synchronousWriter.newLine();
+          synchronousWriter.flush();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  @TearDown
+  public void deleteLogs() throws IOException {
+    asyncLogger.close();
+    synchronousWriter.close();
+    try (Stream<Path> files = Files.walk(logDirectory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public void async() {
+    asyncLogger.log(LINE);
+  }
+
+  @Benchmark
+  public void synchronousFlushPerLine() {
+    synchronousLogger.log(LINE);
+  }
+}
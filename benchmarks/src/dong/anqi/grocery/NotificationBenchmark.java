@@ -0,0 +1,75 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What sending a notification costs the checker thread: queueing it on the
+ * {@link NotificationDispatcher} (delivery itself is a no-op here), and formatting a Twitter
+ * digest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificationBenchmark {
+  private static final List<String> DIGEST_EVENTS = ImmutableList.of(
+      "Instacart H Mart: Spots available for Today 9am - 11am & 5 more on 2 days",
+      "Shipt 99 Ranch: Spots available for Today, 2pm - 3pm",
+      "Weee: Spots available for 2026-10-26");
+
+  private final NotificationDispatcher.Channel discardChannel =
+      new NotificationDispatcher.Channel() {
+        @Override
+        public String getName() { return "discard"; }
+
+        @Override
+        public Duration getTimeout() { return Duration.ofSeconds(1); }
+
+        @Override
+        public void deliver(NotificationDispatcher.Notification notification) {}
+      };
+
+  private NotificationDispatcher dispatcher;
+
+  @Setup
+  public void createDispatcher() {
+    dispatcher = new NotificationDispatcher(1024, 2, new Logger() {
+      @Override
+      public void logErr(String s) {}  // queue full; expected at this rate
+    });
+  }
+
+  @TearDown
+  public void closeDispatcher() {
+    dispatcher.close();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public boolean submit() {
+    return dispatcher.submit(discardChannel, "Instacart H Mart", DIGEST_EVENTS.get(0));
+  }
+
+  @Benchmark
+  public String formatDigest() {
+    return TwitterDigestSender.formatDigest(DIGEST_EVENTS);
+  }
+}
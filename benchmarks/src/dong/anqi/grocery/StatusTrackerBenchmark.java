@@ -0,0 +1,77 @@
+package dong.anqi.grocery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of {@link StatusTracker#update}, in memory and journaled. Steady updates are the common
+ * case; every transition is the worst case, since each one is appended to the journal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusTrackerBenchmark {
+  private StatusTracker inMemory;
+  private StatusTracker journaled;
+  private Path journalDirectory;
+  private boolean hasSlot = false;
+
+  @Setup
+  public void createTrackers() throws IOException {
+    inMemory = new StatusTracker();
+    journalDirectory = Files.createTempDirectory("grocery-journal-bench");
+    journaled = new StatusTracker(StatusJournal.open(journalDirectory, "bench"));
+  }
+
+  @TearDown
+  public void deleteJournal() throws IOException {
+    journaled.close();
+    try (Stream<Path> files = Files.walk(journalDirectory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  private StatusTracker.State nextTransition() {
+    hasSlot = !hasSlot;
+    return hasSlot ? StatusTracker.State.HAS_SLOT : StatusTracker.State.NO_SLOT;
+  }
+
+  @Benchmark
+  public GrocerySlotChecker.Status inMemorySteady() {
+    return inMemory.update(StatusTracker.State.NO_SLOT);
+  }
+
+  @Benchmark
+  public GrocerySlotChecker.Status inMemoryTransitions() {
+    return inMemory.update(nextTransition());
+  }
+
+  @Benchmark
+  public GrocerySlotChecker.Status journaledSteady() {
+    return journaled.update(StatusTracker.State.NO_SLOT);
+  }
+
+  @Benchmark
+  public GrocerySlotChecker.Status journaledTransitions() {
+    return journaled.update(nextTransition());
+  }
+}
@@ -1,33 +1,569 @@
 package dong.anqi.grocery;
 
+import com.google.common.collect.ImmutableMap;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.remote.RemoteWebDriver;
+import twitter4j.JSONException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 public abstract class AbstractGrocerySlotChecker implements AutoCloseable, GrocerySlotChecker {
   private final String description;
-  protected final RemoteWebDriver driver;
+  private final WebDriverPool driverPool;
+  private final SharedSession sharedSession;
+  private final BrowserSession session;
+  private final Optional<SessionVault> sessionVault;
+  private final ReadinessStats readinessStats;
+  private final CheckMetrics metrics;
+  private final boolean fastPathEnabled;
+  private final Duration checkDeadline;
+  private Instant checkStartedAt = Instant.now();
   protected final Logger logger;
 
-  private RemoteWebDriver createDriver() {
-    // sendKeys does not work with headless mode :(
-    ChromeOptions chromeOptions = new ChromeOptions(); // .addArguments("--headless");
-    RemoteWebDriver driver = new ChromeDriver(chromeOptions);
-    return driver;
+  protected final StatusTracker statusTracker;
+
+  /** Lazily created, since subclasses build probes from their own fields. */
+  private Optional<HttpFastPath> fastPath = null;
+  private int fastChecksSinceBrowserCheck = 0;
+
+  /** Even when the fast path works, re-check with the browser this often to keep it honest. */
+  private static final int BROWSER_CHECK_INTERVAL = 10;
+
+  private static final Path SESSION_KEY_PATH = Paths.get("creds", "session.key");
+
+  /** Whether the current check logged in through {@link #login(BooleanSupplier)}. */
+  private boolean loggedInThisCheck = false;
+  /** The shared session's login count when the current check started. */
+  private long loginGeneration = 0;
+  /** Whether a session restored from disk has yet to be used by a successful check. */
+  private boolean sessionUnproven = false;
+
+  /** Browser leased for the current check. Only valid within {@link #runCheck()}. */
+  protected RemoteWebDriver driver;
+  /** Lease on {@link #driver}, for {@link #abortCheck()} on another thread. */
+  private volatile WebDriverPool.Lease currentLease = null;
+
+  /**
+   * @param sessionOrigins Origins (scheme and host) whose cookies make up this checker's login,
+   *                       carried over when the checker moves between pooled browsers.
+   */
+  public AbstractGrocerySlotChecker(
+      String description, Collection<String> sessionOrigins, CheckerContext context) {
+    this(description, new SharedSession(description, sessionOrigins), context);
+  }
+
+  /**
+   * For checkers that log in to the same account as others, e.g. several stores on one site.
+   *
+   * @param sessionName Checkers passing the same name share a login; see {@link SharedSession}.
+   */
+  public AbstractGrocerySlotChecker(String description, String sessionName,
+      Collection<String> sessionOrigins, CheckerContext context) {
+    this(description, context.getSharedSession(sessionName, sessionOrigins), context);
   }
 
-  public AbstractGrocerySlotChecker(String description, Logger logger) {
-    if (logger == null) { throw new NullPointerException(); }
+  private AbstractGrocerySlotChecker(
+      String description, SharedSession sharedSession, CheckerContext context) {
+    if (context == null) { throw new NullPointerException(); }
 
     this.description = description;
-    this.driver = createDriver();
-    this.logger = logger;
+    this.driverPool = context.getDriverPool();
+    this.sharedSession = sharedSession;
+    this.session = sharedSession.getBrowserSession();
+    this.readinessStats = context.getReadinessStats();
+    this.metrics = context.getMetrics();
+    this.fastPathEnabled = context.isFastPathEnabled();
+    this.checkDeadline = context.getCheckDeadline();
+    this.logger = context.getLogger();
+    this.statusTracker = createStatusTracker(context);
+    this.sessionVault = openSessionVault(context);
+    restoreSavedSession();
+  }
+
+  private StatusTracker createStatusTracker(CheckerContext context) {
+    if (context.getJournalDirectory().isEmpty()) {
+      return new StatusTracker();
+    }
+
+    try {
+      return new StatusTracker(
+          StatusJournal.open(context.getJournalDirectory().get(), description));
+    } catch (IOException e) {
+      logErr("Couldn't open status journal, status won't survive restarts: " + e);
+      return new StatusTracker();
+    }
+  }
+
+  private Optional<SessionVault> openSessionVault(CheckerContext context) {
+    if (context.getSessionDirectory().isEmpty()) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(SessionVault.open(context.getSessionDirectory().get(), SESSION_KEY_PATH));
+    } catch (IOException e) {
+      logErr("Couldn't open session vault, logins won't survive restarts: " + e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Picks up the session saved by an earlier run, to be put into the first browser this checker
+   * leases. Whether it's still good is left to the first check, which logs in as usual if not.
+   */
+  private void restoreSavedSession() {
+    if (sessionVault.isEmpty() || !sharedSession.claimRestore()) { return; }
+
+    try {
+      Optional<String> saved = sessionVault.get().load(sharedSession.getName());
+      if (saved.isPresent()) {
+        session.loadJson(saved.get());
+        sessionUnproven = true;
+      }
+    } catch (IOException | JSONException e) {
+      logErr("Couldn't restore saved session, will log in again: " + e);
+    }
+  }
+
+  /**
+   * Saves the session as of this check's login, so that the next run can skip logging in. Taken
+   * from the shared session rather than the browser, which may have fallen behind a later login.
+   */
+  private void persistSession() {
+    if (sessionVault.isEmpty()) { return; }
+
+    try {
+      sessionVault.get().save(sharedSession.getName(), session.toJson());
+    } catch (IOException e) {
+      logErr("Couldn't save session: " + e);
+    }
   }
 
   @Override
   public String getDescription() { return description; }
 
+  @Override
+  public boolean currentlyHasSlot() {
+    return statusTracker.lastWasAvailable();
+  }
+
+  @Override
+  public List<Instant> getSlotOpenings() {
+    return statusTracker.getSlotOpenings();
+  }
+
+  /** Sets a cookie in every browser this checker runs in, e.g. for site configuration. */
+  protected void seedCookie(String origin, Cookie cookie) {
+    session.seedCookie(origin, cookie);
+  }
+
+  /**
+   * Sites that can be checked without a browser return a probe for the endpoint to poll. Cookies
+   * are borrowed from the page the browser is on at the end of {@link #runCheck()}, so the probe
+   * URL should be on the same site.
+   */
+  protected Optional<HttpFastPath.Probe> createFastPathProbe() {
+    return Optional.empty();
+  }
+
+  private Optional<HttpFastPath> getFastPath() {
+    if (fastPath == null) {
+      fastPath = fastPathEnabled ?
+          createFastPathProbe().map(probe -> new HttpFastPath(probe, checkDeadline)) :
+          Optional.empty();
+    }
+    return fastPath;
+  }
+
+  /**
+   * Updates {@link #statusTracker} from an observation made away from this check's own page, e.g.
+   * by the fast path or another checker's sweep.
+   */
+  protected Status applyObservation(HttpFastPath.Observation observation) {
+    Status status = statusTracker.update(observation.state);
+    status.notificationMessage = observation.message;
+    observation.slotCount.ifPresent(c -> status.slotCount = Optional.of(c));
+    status.earliestWindow = observation.earliestWindow;
+    return status;
+  }
+
+  /** @return Present status if the fast path gave a definite answer. */
+  protected Optional<Status> tryFastPath() {
+    Optional<HttpFastPath> fastPath = getFastPath();
+    if (fastPath.isEmpty() || !fastPath.get().hasSession() ||
+        fastChecksSinceBrowserCheck >= BROWSER_CHECK_INTERVAL) {
+      return Optional.empty();
+    }
+
+    try {
+      HttpFastPath.Observation observation;
+      try (CheckMetrics.Span span = timePhase(CheckMetrics.Phase.FAST_PATH)) {
+        observation = fastPath.get().poll();
+      }
+      fastChecksSinceBrowserCheck++;
+
+      log(observation.message.orElse("no slots") + " (fast path)");
+      return Optional.of(applyObservation(observation));
+    } catch (HttpFastPath.UnavailableException e) {
+      log("Fast path unavailable, checking with browser: " + e.getMessage());
+      return Optional.empty();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Optional.empty();
+    }
+  }
+
+  /** Notes when the check started, for {@link #getTimeLeft()}, then runs {@link #check()}. */
+  @Override
+  public Optional<Status> doCheck() {
+    checkStartedAt = Instant.now();
+    return check();
+  }
+
+  /** How much of the check deadline is left, counting from the start of {@link #doCheck()}. */
+  protected Duration getTimeLeft() {
+    Duration left = Duration.between(Instant.now(), checkStartedAt.plus(checkDeadline));
+    return left.isNegative() ? Duration.ZERO : left;
+  }
+
+  /** The check itself: the fast path if it has an answer, or else a check with a browser. */
+  protected Optional<Status> check() {
+    Optional<Status> fastStatus = tryFastPath();
+    if (fastStatus.isPresent()) {
+      return fastStatus;
+    }
+    return checkWithBrowser();
+  }
+
+  /**
+   * Lends the fast path the browser's cookies. If that fails, the fast path is left without a
+   * session until the next browser check, rather than losing the status the check came to.
+   */
+  private void captureFastPathSession() {
+    getFastPath().ifPresent(fp -> {
+      try {
+        fp.captureSession(driver);
+      } catch (WebDriverException e) {
+        logErr("Couldn't lend the session to the fast path: " + e.getMessage());
+        fp.invalidateSession();
+      }
+    });
+  }
+
+  /** Leases a browser and runs {@link #runCheck()} in it. */
+  protected Optional<Status> checkWithBrowser() {
+    try (WebDriverPool.Lease lease = leaseDriver()) {
+      driver = lease.driver();
+      loginGeneration = sharedSession.getGeneration();
+      try {
+        Optional<Status> status = runCheck();
+        if (status.isPresent()) {
+          captureFastPathSession();
+          fastChecksSinceBrowserCheck = 0;
+
+          if (sessionUnproven) {
+            log(loggedInThisCheck ?
+                "Saved session had expired, logged in again" : "Resumed saved session");
+            sessionUnproven = false;
+          }
+          if (loggedInThisCheck) {
+            persistSession();
+          }
+        } else {
+          lease.markFailed();
+        }
+        recordPageResources();
+        return status;
+      } catch (RuntimeException e) {
+        lease.markSuspect();
+        throw e;
+      } finally {
+        currentLease = null;
+        driver = null;
+        loggedInThisCheck = false;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logErr("Interrupted while waiting for a browser");
+      return Optional.empty();
+    }
+  }
+
+  /** Whether {@link #runCheck()} is to sweep its account; see {@link #checkBySweep}. */
+  private boolean sweeping = false;
+  /** What this check's sweep observed; see {@link #recordSweep}. */
+  private Map<?, ?> sweepObservations = ImmutableMap.of();
+
+  /** A sweep run in this check's browser, and what the check itself came to. */
+  private static final class BrowserSweep<K, V> implements SweepCoordinator.Sweep<K, V> {
+    final Map<K, V> observations;
+    final Optional<Status> status;
+
+    BrowserSweep(Map<K, V> observations, Optional<Status> status) {
+      this.observations = observations;
+      this.status = status;
+    }
+
+    @Override
+    public Map<K, V> getObservations() { return observations; }
+  }
+
+  /**
+   * How long to wait on another checker's sweep: until half the check deadline is gone, so that a
+   * sweep of this check's own still has the other half.
+   */
+  private Duration getSweepWait() {
+    Duration wait = getTimeLeft().minus(checkDeadline.dividedBy(2));
+    return wait.isNegative() ? Duration.ZERO : wait;
+  }
+
+  /**
+   * Whether a sweep should go on to another store: only while more than half the check deadline
+   * is left, leaving the rest for the store it's on and for the rest of the check. A sweep always
+   * takes its own checker's store first.
+   */
+  protected boolean hasTimeToSweep() {
+    return getTimeLeft().compareTo(checkDeadline.dividedBy(2)) > 0;
+  }
+
+  private void logSweepTimeout(SweptAccount<?, ?> account, Exception e) {
+    logErr("Gave up waiting on " + account.getName() + "'s sweep: " + e.getMessage());
+  }
+
+  /**
+   * {@code key}'s observation from {@code account}'s last sweep, if it's fresh and unused. Waits
+   * for a sweep in progress, since its result is likely to be what's wanted.
+   *
+   * @return Empty if there is none, or if the sweep in progress ran too long to wait for.
+   */
+  protected <K extends Enum<K>, V> Optional<V> takeFreshSweep(SweptAccount<K, V> account, K key) {
+    try {
+      return account.getSweeps().takeIfFresh(key, getSweepWait());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Optional.empty();
+    } catch (java.util.concurrent.TimeoutException e) {
+      logSweepTimeout(account, e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Checks {@code key} through {@code account}'s sweeps: takes a fresh observation of it if there
+   * is one, or else sweeps the account in a leased browser. There, {@link #runCheck()} sees
+   * {@link #isSweeping()}, observes every store it can, and hands them to {@link #recordSweep}.
+   * Only the checker that sweeps leases a browser, so checkers waiting on its sweep hold neither a
+   * browser nor a pool slot.
+   *
+   * @param useObservation Reports an observation taken from another checker's sweep.
+   */
+  protected <K extends Enum<K>, V> Optional<Status> checkBySweep(
+      SweptAccount<K, V> account, K key, Function<V, Optional<Status>> useObservation) {
+    SweepCoordinator.Outcome<V, BrowserSweep<K, V>> outcome;
+    try {
+      outcome = account.getSweeps().sweep(key, getSweepWait(), this::sweepWithBrowser);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Optional.empty();
+    } catch (java.util.concurrent.TimeoutException e) {
+      logSweepTimeout(account, e);
+      return Optional.empty();
+    }
+
+    if (outcome.getRanSweep().isPresent()) {
+      return outcome.getRanSweep().get().status;
+    }
+    return outcome.getObservation().flatMap(useObservation);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <K, V> BrowserSweep<K, V> sweepWithBrowser() {
+    sweepObservations = ImmutableMap.of();
+    sweeping = true;
+    try {
+      Optional<Status> status = checkWithBrowser();
+      return new BrowserSweep<>((Map<K, V>) sweepObservations, status);
+    } finally {
+      sweeping = false;
+      sweepObservations = ImmutableMap.of();
+    }
+  }
+
+  /** Whether {@link #runCheck()} should sweep its account; see {@link #checkBySweep}. */
+  protected boolean isSweeping() {
+    return sweeping;
+  }
+
+  /**
+   * Hands what {@link #runCheck()}'s sweep observed, keyed like the account's sweeps, to
+   * {@link #checkBySweep}. Stores it couldn't observe are left out.
+   */
+  protected void recordSweep(Map<?, ?> observations) {
+    sweepObservations = observations;
+  }
+
+  /**
+   * Quits the browser the check is using, or is still switching over to its session, which fails
+   * whatever WebDriver call it's stuck in. Waits that don't involve a browser bound themselves:
+   * waits on another checker's sweep end half way through the deadline, and a fast path poll
+   * takes at most 15 seconds.
+   */
+  @Override
+  public void abortCheck() {
+    WebDriverPool.Lease lease = currentLease;
+    if (lease != null) {
+      logErr("Check ran past its deadline, recycling its browser");
+      lease.recycle();
+    }
+  }
+
+  private WebDriverPool.Lease leaseDriver() throws InterruptedException {
+    try (CheckMetrics.Span span = timePhase(CheckMetrics.Phase.BROWSER_WAIT)) {
+      // Published before the browser is switched over to this session, which can hang too
+      return driverPool.lease(session, getBrowserProfile(), lease -> currentLease = lease);
+    } catch (RuntimeException e) {
+      currentLease = null;
+      throw e;
+    }
+  }
+
+  /**
+   * What to load in this checker's pages. Checkers that need nothing but the page's text should
+   * use {@link BrowserProfile#LEAN}.
+   */
+  protected BrowserProfile getBrowserProfile() {
+    return BrowserProfile.FULL;
+  }
+
+  /** Performs the actual check, using {@link #driver}. See {@link #doCheck()}. */
+  protected abstract Optional<Status> runCheck();
+
+  /** Starts timing {@code phase} of the current check; see {@link CheckMetrics}. */
+  protected CheckMetrics.Span timePhase(CheckMetrics.Phase phase) {
+    return metrics.time(getDescription(), phase);
+  }
+
+  /**
+   * Runs {@code login}, timing it, unless another checker on the same session has logged in since
+   * this check started; its login is put into {@link #driver} instead. Either way, the caller
+   * should then reload the page it wanted. Once a check that logged in succeeds, the session is
+   * saved for later runs.
+   *
+   * @param login Logs in; returns whether the browser is logged in afterwards.
+   */
+  protected void login(BooleanSupplier login) {
+    try (CheckMetrics.Span span = timePhase(CheckMetrics.Phase.LOGIN)) {
+      switch (sharedSession.login(currentLease, loginGeneration, login)) {
+        case LOGGED_IN:
+          loggedInThisCheck = true;
+          break;
+        case FAILED:
+          logErr("Login failed; other checkers keep the session they had");
+          break;
+        case REUSED:
+          log("Using the login another checker just made");
+          break;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Navigates the browser to {@code url}, timing it as a page load. */
+  protected void loadPage(String url) {
+    recordPageResources();
+    try (CheckMetrics.Span span = timePhase(CheckMetrics.Phase.PAGE_LOAD)) {
+      driver.get(url);
+    } catch (TimeoutException e) {
+      // Usually a slow ad or tracker; the readiness checks that follow decide if enough loaded
+      log("Page load timed out, carrying on with what loaded: " + url);
+    }
+  }
+
+  /**
+   * Waits until {@code condition} holds on the current page, for at most {@code deadline}. The
+   * time taken is recorded under {@code label} in the readiness stats.
+   *
+   * @return Whether the condition was met before the deadline.
+   */
+  protected boolean awaitReady(
+      String label, Duration deadline, PageReadiness.Condition condition) {
+    Optional<Duration> waited = PageReadiness.await(driver, deadline, condition);
+    waited.ifPresentOrElse(
+        w -> readinessStats.recordReady(getDescription(), label, w),
+        () -> {
+          readinessStats.recordTimeout(getDescription(), label);
+          log(String.format("Gave up waiting for %s after %ds", label, deadline.getSeconds()));
+        });
+    return waited.isPresent();
+  }
+
+  // Entries are cleared once read, and images marked, so that nothing is counted twice however
+  // often a page is read. Requests to blocked hosts only show up if the browser reports them.
+  private static final String READ_PAGE_RESOURCES_SCRIPT =
+      "var blockedHosts = arguments[0];" +
+      "var entries = performance.getEntriesByType('resource');" +
+      "var bytes = 0, blocked = 0;" +
+      "entries.forEach(function(e) {" +
+      "  bytes += e.transferSize || 0;" +
+      "  var host = new URL(e.name).hostname;" +
+      "  if (blockedHosts.some(function(h) { return host === h || host.endsWith('.' + h); })) {" +
+      "    blocked++;" +
+      "  }" +
+      "});" +
+      "performance.clearResourceTimings();" +
+      "var skippedImages = !arguments[1] ? [] : Array.prototype.filter.call(document.images," +
+      "    function(img) { return img.naturalWidth === 0 && !img.groceryCounted; });" +
+      "skippedImages.forEach(function(img) { img.groceryCounted = true; });" +
+      "return [entries.length, bytes, blocked + skippedImages.length];";
+
+  /**
+   * Records what the current page has fetched since last asked, per the browser's Resource
+   * Timing, and what {@link #getBrowserProfile()} kept it from fetching.
+   */
+  @SuppressWarnings("unchecked")
+  private void recordPageResources() {
+    BrowserProfile profile = getBrowserProfile();
+    try {
+      List<Object> counts = (List<Object>) driver.executeScript(READ_PAGE_RESOURCES_SCRIPT,
+          profile.getBlockedHosts(), profile == BrowserProfile.LEAN);
+      metrics.recordPageResources(getDescription(), ((Number) counts.get(0)).longValue(),
+          ((Number) counts.get(1)).longValue(), ((Number) counts.get(2)).longValue());
+    } catch (WebDriverException e) {
+      // Nothing loaded yet, or the page is going away; either way there's nothing to count
+    }
+  }
+
+  /**
+   * Snapshots every element matching {@code cssSelector}, along with whatever {@code spec} asks
+   * for, in a single script call. Prefer this to walking {@link WebElement}s, where every
+   * attribute, style or text read is a separate WebDriver round trip.
+   */
+  @SuppressWarnings("unchecked")
+  protected List<ElementSnapshot> extract(String cssSelector, ElementSnapshot.Spec spec) {
+    try (CheckMetrics.Span span = timePhase(CheckMetrics.Phase.EXTRACTION)) {
+      Object result = driver.executeScript(ElementSnapshot.EXTRACT_SCRIPT,
+          cssSelector, spec.attributes, spec.cssProperties, spec.childDepth, spec.innerHtml,
+          spec.descendantSelector);
+      return ElementSnapshot.fromScriptResults((List<Object>) result);
+    }
+  }
+
   protected String getInnerHtml(WebElement element) {
     String htmlUsingAttr = element.getAttribute("innerHTML");
     if (htmlUsingAttr != null) {
@@ -37,6 +573,51 @@ public abstract class AbstractGrocerySlotChecker implements AutoCloseable, Groce
     return (String) (driver.executeScript("return arguments[0].innerHTML;", element));
   }
 
+  // Goes through the native value setter so that React-style controlled inputs see the change.
+  private static final String FILL_FIELD_SCRIPT =
+      "var el = arguments[0];" +
+      "var proto = el instanceof HTMLTextAreaElement ?" +
+      "    HTMLTextAreaElement.prototype : HTMLInputElement.prototype;" +
+      "Object.getOwnPropertyDescriptor(proto, 'value').set.call(el, arguments[1]);" +
+      "el.dispatchEvent(new Event('input', {bubbles: true}));" +
+      "el.dispatchEvent(new Event('change', {bubbles: true}));";
+
+  private static final String FIND_FORM_SCRIPT =
+      "return arguments[0].form || arguments[0].closest('form');";
+  // requestSubmit() fires the submit event (and thus the site's handlers), unlike submit()
+  private static final String SUBMIT_FORM_SCRIPT =
+      "var form = arguments[0];" +
+      "if (form.requestSubmit) { form.requestSubmit(); } else { form.submit(); }";
+
+  /**
+   * Types {@code value} into the form field matched by {@code query}. Headless browsers get the
+   * value set by script, since key events are unreliable without a window.
+   */
+  protected void fillField(By query, String value) {
+    WebElement field = driver.findElement(query);
+    if (driverPool.isHeadless()) {
+      driver.executeScript(FILL_FIELD_SCRIPT, field, value);
+    } else {
+      field.sendKeys(value);
+    }
+  }
+
+  /**
+   * Submits the form containing the field matched by {@code query}. Fields outside of any form,
+   * e.g. in a login modal that listens for Enter, get Enter pressed in them instead.
+   */
+  protected void submitForm(By query) {
+    WebElement field = driver.findElement(query);
+    Object form = driver.executeScript(FIND_FORM_SCRIPT, field);
+    if (form == null) {
+      field.sendKeys(Keys.ENTER);
+    } else if (driverPool.isHeadless()) {
+      driver.executeScript(SUBMIT_FORM_SCRIPT, form);
+    } else {
+      field.submit();
+    }
+  }
+
   protected void log(String s) {
     logger.log(String.format("%s %s: %s", Utils.nowString(), getDescription(), s));
   }
@@ -46,6 +627,7 @@ public abstract class AbstractGrocerySlotChecker implements AutoCloseable, Groce
 
   @Override
   public void close() {
-    driver.quit();
+    // Browsers belong to the pool, which is closed by whoever created it.
+    statusTracker.close();
   }
 }
@@ -10,45 +10,48 @@ import java.util.Optional;
 import java.util.Set;
 
 public class AmazonWholeFoodsSlotChecker extends AbstractGrocerySlotChecker {
-  public AmazonWholeFoodsSlotChecker(Store store, Logger logger) {
-    super("Whole Foods", logger);
-  }
-
-  @Override
-  public boolean currentlyHasSlot() {
-    return statusTracker.lastWasAvailable();
+  public AmazonWholeFoodsSlotChecker(Store store, CheckerContext context) {
+    super("Whole Foods", ImmutableSet.of(ORIGIN), context);
   }
 
   private static final String CREDS_PATH = "creds/amazon.creds";
 
+  private static final String ORIGIN = "https://www.amazon.com";
   private static final String LOGIN_PAGE = "https://shop.shipt.com/login";  // FIXME
   private static final String HOME_PAGE =
       "https://www.amazon.com/alm/storefront/ref=grocery_wholefoods?almBrandId=VUZHIFdob2xlIEZvb2Rz";
 
+  private static final By HOME_READY_QUERY =
+      By.cssSelector(".alm-storefront-reserved-desktop");
+
   private static final Set<String> UNAVAILABLE_TEXT =
       ImmutableSet.of("sold out");
 
+  private static final Duration LOGIN_DEADLINE = Duration.ofSeconds(15);
+  private static final Duration PAGE_LOAD_DEADLINE = Duration.ofSeconds(15);
+
   private void executeLogin() {
     driver.get(LOGIN_PAGE);
     if (!driver.getCurrentUrl().equals(LOGIN_PAGE)) {
       log(String.format("URL navigated to %s, already logged in?", driver.getCurrentUrl()));
     } else {
-      Utils.startInterruptibleSleep(Duration.ofSeconds(5));
+      awaitReady("login form", LOGIN_DEADLINE, PageReadiness.allOf(
+          PageReadiness.elementPresent(By.id("username")),
+          PageReadiness.elementPresent(By.id("password"))));
 
-      // TODO: Set values using JavascriptExecutor so we can run headless
       Utils.Credentials creds = Utils.readCredentials(CREDS_PATH);
-      driver.findElement(By.id("username")).sendKeys(creds.user);
-      driver.findElement(By.id("password")).sendKeys(creds.pass);
-      driver.findElement(By.id("password")).submit();
+      fillField(By.id("username"), creds.user);
+      fillField(By.id("password"), creds.pass);
+      submitForm(By.id("password"));
 
-      Utils.startInterruptibleSleep(Duration.ofSeconds(8));
+      awaitReady("login submit", LOGIN_DEADLINE, PageReadiness.allOf(
+          PageReadiness.urlNot(LOGIN_PAGE),
+          PageReadiness.settled()));
 
       log(String.format("URL %s after login attempt", driver.getCurrentUrl()));
     }
   }
 
-  private StatusTracker statusTracker = new StatusTracker();
-
   // //*[@id="a-page"]/div[2]/div/div[1]
   // .alm-storefront-reserved-desktop
 
@@ -59,7 +62,7 @@ public class AmazonWholeFoodsSlotChecker extends AbstractGrocerySlotChecker {
    */
 
   @Override
-  public Optional<Status> doCheck() {
+  protected Optional<Status> runCheck() {
     driver.get(HOME_PAGE);
     if (!ACCEPTED_HOME_URLS.contains(driver.getCurrentUrl())) {
       log(String.format("URL navigated to %s, retrying login?", driver.getCurrentUrl()));
@@ -68,8 +71,11 @@ public class AmazonWholeFoodsSlotChecker extends AbstractGrocerySlotChecker {
       driver.get(HOME_PAGE);
     }
 
-    // TODO this should be a page loaded waiter in case site is bogged down
-    Utils.startInterruptibleSleep(Duration.ofSeconds(5));
+    awaitReady("home page", PAGE_LOAD_DEADLINE, PageReadiness.anyOf(
+        PageReadiness.allOf(
+            PageReadiness.elementPresent(HOME_READY_QUERY),
+            PageReadiness.settled()),
+        PageReadiness.not(PageReadiness.urlIn(ACCEPTED_HOME_URLS))));
 
     if (!ACCEPTED_HOME_URLS.contains(driver.getCurrentUrl())) {
       logErr(String.format("Failed to log in (URL %s), giving up", driver.getCurrentUrl()));
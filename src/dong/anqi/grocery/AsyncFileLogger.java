@@ -0,0 +1,230 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Logger that hands lines to a single background writer through a lock-free ring buffer, so that
+ * logging from a checker thread costs a couple of atomic operations rather than a disk write.
+ * <p>
+ * The writer appends to {@code logs_<timestamp>.txt} files, flushing once per batch of lines, and
+ * starts a new file once the current one is too big or too old. Finished files can optionally be
+ * gzipped. If the writer falls far enough behind that the ring fills up, new lines are dropped
+ * (and the number dropped is logged) rather than blocking the caller.
+ */
+public class AsyncFileLogger implements Logger, AutoCloseable {
+  private static final DateTimeFormatter FILE_NAME_FORMAT =
+      DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+  private static final int MAX_BATCH = 256;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+  private final Path directory;
+  private final long maxFileBytes;
+  private final Duration maxFileAge;
+  private final boolean compressRotated;
+  private final List<Consumer<String>> sinks;
+
+  // Ring buffer: producers claim sequence numbers, then publish into the slot; the writer clears
+  // each slot before advancing readSequence, which is what frees it for reuse.
+  private final AtomicReferenceArray<String> slots;
+  private final int mask;
+  private final AtomicLong claimSequence = new AtomicLong();
+  private final AtomicLong readSequence = new AtomicLong();
+  private final AtomicLong droppedLines = new AtomicLong();
+
+  private final Thread writerThread;
+  private final ExecutorService compressionExecutor = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "log-compressor");
+    t.setDaemon(true);
+    return t;
+  });
+  private volatile boolean closed = false;
+
+  // Only touched by the writer thread
+  private BufferedWriter writer;
+  private Path currentFile;
+  private long currentFileBytes;
+  private Instant currentFileStart;
+
+  /**
+   * @param capacity        Lines the ring can hold; rounded up to a power of two.
+   * @param maxFileBytes    Rotate after a file reaches this size.
+   * @param maxFileAge      Rotate after a file has been open this long.
+   * @param compressRotated Whether to gzip files once they have been rotated out.
+   * @param sinks           Also receive every line, on the writer thread (e.g. the status window).
+   */
+  public AsyncFileLogger(Path directory, int capacity, long maxFileBytes, Duration maxFileAge,
+      boolean compressRotated, List<Consumer<String>> sinks) throws IOException {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+
+    this.directory = directory;
+    this.maxFileBytes = maxFileBytes;
+    this.maxFileAge = maxFileAge;
+    this.compressRotated = compressRotated;
+    this.sinks = ImmutableList.copyOf(sinks);
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+
+    Files.createDirectories(directory);
+    openNewFile();
+
+    writerThread = new Thread(this::runWriter, "log-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  @Override
+  public void log(String s) {
+    if (closed) { return; }
+
+    long sequence;
+    do {
+      sequence = claimSequence.get();
+      if (sequence - readSequence.get() > mask) {
+        droppedLines.incrementAndGet();
+        return;
+      }
+    } while (!claimSequence.compareAndSet(sequence, sequence + 1));
+
+    slots.lazySet((int) (sequence & mask), s);
+  }
+
+  private void openNewFile() throws IOException {
+    String name = "logs_" + FILE_NAME_FORMAT.format(LocalDateTime.now());
+    Path file = directory.resolve(name + ".txt");
+    for (int i = 1; Files.exists(file); i++) {
+      file = directory.resolve(name + "_" + i + ".txt");
+    }
+
+    currentFile = file;
+    currentFileBytes = 0;
+    currentFileStart = Instant.now();
+    writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+  }
+
+  private void rotateIfNeeded() throws IOException {
+    if (currentFileBytes < maxFileBytes &&
+        Duration.between(currentFileStart, Instant.now()).compareTo(maxFileAge) < 0) {
+      return;
+    }
+
+    writer.close();
+    Path finished = currentFile;
+    if (compressRotated) {
+      compressionExecutor.execute(() -> compress(finished));
+    }
+    openNewFile();
+  }
+
+  private static void compress(Path file) {
+    Path compressed = file.resolveSibling(file.getFileName() + ".gz");
+    try (InputStream in = Files.newInputStream(file);
+         OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+      in.transferTo(out);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return;
+    }
+
+    try {
+      Files.delete(file);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /** Moves up to {@code max} published lines out of the ring. */
+  private int drainTo(List<String> batch, int max) {
+    long read = readSequence.get();
+    int drained = 0;
+    while (drained < max) {
+      int index = (int) (read & mask);
+      String line = slots.get(index);
+      if (line == null) { break; }  // not claimed, or claimed but not yet published
+
+      slots.lazySet(index, null);
+      batch.add(line);
+      read++;
+      drained++;
+    }
+    readSequence.set(read);
+    return drained;
+  }
+
+  private void writeBatch(List<String> batch) throws IOException {
+    long dropped = droppedLines.getAndSet(0);
+    if (dropped > 0) {
+      batch.add(String.format("%s [%d log lines dropped, logger fell behind]",
+          Utils.nowString(), dropped));
+    }
+
+    for (String line : batch) {
+      writer.write(line);
+      writer.newLine();
+      currentFileBytes += line.length() + 1;
+      for (Consumer<String> sink : sinks) {
+        sink.accept(line);
+      }
+    }
+    writer.flush();
+    rotateIfNeeded();
+  }
+
+  private void runWriter() {
+    List<String> batch = new ArrayList<>(MAX_BATCH);
+    while (true) {
+      batch.clear();
+      if (drainTo(batch, MAX_BATCH) == 0) {
+        if (closed && claimSequence.get() == readSequence.get()) { break; }
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+        continue;
+      }
+
+      try {
+        writeBatch(batch);
+      } catch (IOException | RuntimeException e) {
+        e.printStackTrace();
+      }
+    }
+
+    try {
+      writer.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /** Writes out whatever is still buffered, then stops the writer. */
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      writerThread.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    compressionExecutor.shutdown();
+  }
+}
@@ -1,42 +1,70 @@
 package dong.anqi.grocery;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.openqa.selenium.By;
-import org.openqa.selenium.WebElement;
+import twitter4j.JSONArray;
+import twitter4j.JSONException;
+import twitter4j.JSONObject;
 
 import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
 public abstract class BaseInstacartSlotChecker extends AbstractGrocerySlotChecker {
-  public BaseInstacartSlotChecker(String description, Logger logger) {
-    super(description, logger);
+  /** @param sessionName Checkers logging in to the same account share a session by this name. */
+  public BaseInstacartSlotChecker(String description, String sessionName,
+      Collection<String> sessionOrigins, CheckerContext context) {
+    super(description, sessionName, sessionOrigins, context);
   }
 
-  @Override
-  public final boolean currentlyHasSlot() {
-    return statusTracker.lastWasAvailable();
-  }
-
-  protected abstract void executeLogin();
+  /** @return Whether the browser is logged in afterwards, as far as can be told. */
+  protected abstract boolean executeLogin();
 
   // For primary availability check (storefront)
   protected abstract String getHomePage();
 
   protected abstract Set<String> getAcceptedHomeUrls();
 
-  protected abstract @NotNull By getDeliveryTimeButtonQuery();
+  /** CSS selector for the storefront's delivery time button. */
+  protected abstract @NotNull String getDeliveryTimeButtonSelector();
 
   // For secondary availability check (delivery info)
   protected abstract String getDeliveryInfoPage();
 
+  /**
+   * JSON endpoint behind the delivery info page, if known. Enables polling it directly; see
+   * {@link HttpFastPath}.
+   */
+  protected Optional<String> getDeliveryContentEndpoint() {
+    return Optional.empty();
+  }
+
   private static final Set<String> UNAVAILABLE_TEXT = ImmutableSet.of("Not available");
+  private static final List<String> FULLY_BOOKED_MARKERS = ImmutableList.of(
+      "No delivery times available",
+      "All delivery windows are full",
+      "assets/modules/errors/heavy_load");
   private static final Set<String> INDETERMINATE_TEXT = ImmutableSet.of("See delivery times");
 
-  private StatusTracker statusTracker = new StatusTracker();
+  private static final String DELIVERY_PANEL_SELECTOR =
+      "div[aria-label*=\"retailer info modal\" i] div#react-tabs-1";
+  private static final By DELIVERY_PANEL_QUERY = By.cssSelector(DELIVERY_PANEL_SELECTOR);
+
+  private static final ElementSnapshot.Spec DELIVERY_BUTTON_SPEC =
+      new ElementSnapshot.Spec().descendants("span");
+  private static final ElementSnapshot.Spec DELIVERY_PANEL_SPEC = new ElementSnapshot.Spec()
+      .innerHtml()
+      .cssProperties("font-weight", "display")
+      .childDepth(2)
+      // "div > div > div > div > div:nth-child(2) > div > div > div"
+      .descendants("div.module-wrapper:nth-child(2) > div > div > div");
+
+  private static final Duration PAGE_LOAD_DEADLINE = Duration.ofSeconds(15);
 
   /**
    * Tries to load the requested page, and attempts to log in if the page load initially fails.
@@ -46,20 +74,31 @@ public abstract class BaseInstacartSlotChecker extends AbstractGrocerySlotChecke
    * @param requestedUrl The URL to try to load.
    * @param acceptedUrls URLs that will be accepted, should the server redirect the GET request to a
    *                     different URL.
+   * @param readyQuery   Element whose presence means the page has rendered what we scrape.
+   * @param pageLabel    Name of the page, for readiness stats.
    * @return Whether the login attempt ultimately succeeded.
    */
-  private boolean tryToLoadPageWithAttemptedLogin(String requestedUrl, Set<String> acceptedUrls) {
-    driver.get(requestedUrl);
+  private boolean tryToLoadPageWithAttemptedLogin(
+      String requestedUrl, Set<String> acceptedUrls, By readyQuery, String pageLabel) {
+    loadPage(requestedUrl);
     if (!acceptedUrls.contains(driver.getCurrentUrl())) {
       log(String.format("URL navigated to %s, retrying login?", driver.getCurrentUrl()));
 
-      executeLogin();
-      Utils.startInterruptibleSleep(Duration.ofSeconds(3));
-      driver.get(requestedUrl);
+      login(() -> {
+        boolean loggedIn = executeLogin();
+        awaitReady("post-login load", PAGE_LOAD_DEADLINE, PageReadiness.documentComplete());
+        return loggedIn;
+      });
+      loadPage(requestedUrl);
     }
 
-    // TODO this should be a page loaded waiter in case site is bogged down
-    Utils.startInterruptibleSleep(Duration.ofSeconds(5));
+    // Stop early if a client-side redirect (e.g. to login) takes us off the page
+    awaitReady(pageLabel, PAGE_LOAD_DEADLINE, PageReadiness.anyOf(
+        PageReadiness.allOf(
+            PageReadiness.urlIn(acceptedUrls),
+            PageReadiness.elementPresent(readyQuery),
+            PageReadiness.settled()),
+        PageReadiness.not(PageReadiness.urlIn(acceptedUrls))));
 
     return acceptedUrls.contains(driver.getCurrentUrl());
   }
@@ -95,7 +134,8 @@ public abstract class BaseInstacartSlotChecker extends AbstractGrocerySlotChecke
   }
 
   private StatusCheckOutput checkAvailabilityOnHomePage() {
-    List<WebElement> deliveryElements = driver.findElements(getDeliveryTimeButtonQuery());
+    List<ElementSnapshot> deliveryElements =
+        extract(getDeliveryTimeButtonSelector(), DELIVERY_BUTTON_SPEC);
     if (deliveryElements.isEmpty()) {
       logErr("No delivery info found on homepage");
       return new StatusCheckOutput(StatusCheckOutput.Result.SCRAPE_ERROR);
@@ -104,8 +144,12 @@ public abstract class BaseInstacartSlotChecker extends AbstractGrocerySlotChecke
       logErr("Non-unique delivery time button, found " + deliveryElements.size());
     }
 
-    String availabilityText =
-        deliveryElements.get(0).findElement(By.tagName("span")).getText();
+    List<ElementSnapshot> spans = deliveryElements.get(0).getDescendants();
+    if (spans.isEmpty()) {
+      logErr("No availability text in delivery time button");
+      return new StatusCheckOutput(StatusCheckOutput.Result.SCRAPE_ERROR);
+    }
+    String availabilityText = spans.get(0).getText();
 
     if (UNAVAILABLE_TEXT.contains(availabilityText)) {
       return new StatusCheckOutput(StatusCheckOutput.Result.DEFINITE_FAIL);
@@ -117,101 +161,234 @@ public abstract class BaseInstacartSlotChecker extends AbstractGrocerySlotChecke
     // Otherwise, presume slot is available. Whitelist approach is risky LOL.
     Status status = statusTracker.update(StatusTracker.State.HAS_SLOT);
 
-    String message = "Spots available for " +
-        availabilityText.replace("Arrives ", "");
+    String window = availabilityText.replace("Arrives ", "");
+    String message = "Spots available for " + window;
     status.notificationMessage = Optional.of(message);
+    status.earliestWindow = Optional.of(window);
     log(message);
 
     return new StatusCheckOutput(status);
   }
 
-  private StatusCheckOutput checkAvailabilityOnDeliveryInfoPage() {
-    List<WebElement> reactPanelElements = driver.findElements(
-        By.cssSelector("div[aria-label*=\"retailer info modal\" i] div#react-tabs-1"));
+  /** What the delivery info panel says, worked out without touching the browser. */
+  static final class DeliveryPanelSummary {
+    final boolean fullyBooked;
+    final Optional<String> header;  // first day with slots
+    final Optional<String> detail;  // first slot on that day
+    final long daysCount;
+    final long slotsCount;
+
+    DeliveryPanelSummary(boolean fullyBooked, Optional<String> header, Optional<String> detail,
+        long daysCount, long slotsCount) {
+      this.fullyBooked = fullyBooked;
+      this.header = header;
+      this.detail = detail;
+      this.daysCount = daysCount;
+      this.slotsCount = slotsCount;
+    }
+  }
+
+  private static boolean isBold(ElementSnapshot el) {
+    try {
+      return Integer.parseInt(el.getCssValue("font-weight").orElse("400")) >= 500;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /** @param panel Snapshot of the delivery panel, taken with {@link #DELIVERY_PANEL_SPEC}. */
+  static DeliveryPanelSummary summarizeDeliveryPanel(ElementSnapshot panel) {
+    final String innerHtml = panel.getInnerHtml().orElse("");
+    if (FULLY_BOOKED_MARKERS.stream().anyMatch(innerHtml::contains)) {
+      return new DeliveryPanelSummary(true, Optional.empty(), Optional.empty(), 0, 0);
+    }
+
+    Optional<String> header = Optional.empty();
+    Optional<String> detail = Optional.empty();
+    long daysCount = 0;
+    long slotsCount = 0;
+    for (ElementSnapshot slotElement : panel.getDescendants()) {
+      Optional<ElementSnapshot> firstDiv = slotElement.firstChild("div");
+      if (firstDiv.isEmpty()) { continue; }
+      ElementSnapshot el = firstDiv.get();
+
+      // Day headings are bold leaves, slots are flex rows with the slot time in the first div
+      if (!el.hasChild("div") && isBold(el)) {
+        daysCount++;
+        if (header.isEmpty()) { header = Optional.of(el.getText()); }
+      }
+      if (el.getCssValue("display").filter(d -> d.equals("flex")).isPresent()) {
+        slotsCount++;
+        if (detail.isEmpty()) { detail = el.firstChild("div").map(ElementSnapshot::getText); }
+      }
+    }
+
+    return new DeliveryPanelSummary(false, header, detail, daysCount, slotsCount);
+  }
+
+  private static final String AVAILABLE = "available";
+
+  /**
+   * Reads the delivery content endpoint's response. The same notices as on the rendered page mean
+   * no slots. Otherwise a module lists service options by day, each saying whether it's available;
+   * there are slots only if at least one is.
+   */
+  static HttpFastPath.Observation parseDeliveryContent(String body)
+      throws HttpFastPath.UnavailableException {
+    JSONArray modules;
+    try {
+      // twitter4j bundles a JSON parser, which saves pulling in another library
+      JSONObject container = new JSONObject(body).optJSONObject("container");
+      modules = container == null ? null : container.optJSONArray("modules");
+    } catch (JSONException e) {
+      throw new HttpFastPath.UnavailableException("response is not JSON");
+    }
+    if (modules == null || modules.length() == 0) {
+      throw new HttpFastPath.UnavailableException("no container.modules in response");
+    }
+
+    final String flattened = modules.toString();
+    if (FULLY_BOOKED_MARKERS.stream().anyMatch(flattened::contains)) {
+      return new HttpFastPath.Observation(StatusTracker.State.NO_SLOT, Optional.empty());
+    }
+
+    for (int i = 0; i < modules.length(); i++) {
+      JSONObject module = modules.optJSONObject(i);
+      JSONObject data = module == null ? null : module.optJSONObject("data");
+      JSONObject serviceOptions = data == null ? null : data.optJSONObject("service_options");
+      JSONArray days = serviceOptions == null ? null : serviceOptions.optJSONArray("days");
+      if (days == null || days.length() == 0) { continue; }
+
+      int optionsWithAvailability = 0;
+      int availableCount = 0;
+      int availableDays = 0;
+      Optional<String> earliestWindow = Optional.empty();
+      for (int d = 0; d < days.length(); d++) {
+        JSONObject day = days.optJSONObject(d);
+        JSONArray options = day == null ? null : day.optJSONArray("options");
+        if (options == null) { continue; }
+
+        boolean dayAvailable = false;
+        for (int o = 0; o < options.length(); o++) {
+          JSONObject option = options.optJSONObject(o);
+          if (option == null || !option.has("availability")) { continue; }
+          optionsWithAvailability++;
+          if (!AVAILABLE.equals(option.optString("availability", ""))) { continue; }
+
+          availableCount++;
+          dayAvailable = true;
+          if (earliestWindow.isEmpty()) {
+            earliestWindow = Optional.of(
+                (day.optString("date_label", "") + " " + option.optString("window", "")).trim());
+          }
+        }
+        if (dayAvailable) { availableDays++; }
+      }
+
+      if (optionsWithAvailability == 0) {
+        throw new HttpFastPath.UnavailableException("service options without availability");
+      }
+      if (availableCount == 0) {
+        return new HttpFastPath.Observation(StatusTracker.State.NO_SLOT, Optional.empty());
+      }
+      return new HttpFastPath.Observation(StatusTracker.State.HAS_SLOT,
+          Optional.of(String.format("Spots available for %s & %d more on %d days",
+              earliestWindow.orElse(""), availableCount - 1, availableDays)),
+          Optional.of(availableCount),
+          earliestWindow.filter(w -> !w.isEmpty()));
+    }
+
+    throw new HttpFastPath.UnavailableException("unrecognized delivery content");
+  }
+
+  @Override
+  protected Optional<HttpFastPath.Probe> createFastPathProbe() {
+    return getDeliveryContentEndpoint().map(endpoint -> new HttpFastPath.Probe() {
+      @Override
+      public String url() {
+        return endpoint;
+      }
+
+      @Override
+      public HttpFastPath.Observation parse(String body) throws HttpFastPath.UnavailableException {
+        return parseDeliveryContent(body);
+      }
+    });
+  }
+
+  /** Reads the delivery info panel; empty if it couldn't be read or didn't say either way. */
+  private Optional<HttpFastPath.Observation> checkAvailabilityOnDeliveryInfoPage() {
+    List<ElementSnapshot> reactPanelElements =
+        extract(DELIVERY_PANEL_SELECTOR, DELIVERY_PANEL_SPEC);
     if (reactPanelElements.isEmpty()) {
-      logErr("No delivery info panel found");
-      return new StatusCheckOutput(StatusCheckOutput.Result.SCRAPE_ERROR);
+      logErr("No delivery info panel found on " + driver.getCurrentUrl());
+      return Optional.empty();
     }
     if (reactPanelElements.size() != 1) {
       // This contains an ID selector LOL, so this should never happen
       logErr("Non-unique delivery times panel, found " + reactPanelElements.size());
     }
 
-    final WebElement panelElement = reactPanelElements.get(0);
-    {
-      final String innerHtml = getInnerHtml(panelElement);
-      if (innerHtml.contains("No delivery times available") ||
-              innerHtml.contains("All delivery windows are full") ||
-              innerHtml.contains("assets/modules/errors/heavy_load")) {
-        return new StatusCheckOutput(StatusCheckOutput.Result.DEFINITE_FAIL);
-      }
+    DeliveryPanelSummary summary = summarizeDeliveryPanel(reactPanelElements.get(0));
+    if (summary.fullyBooked) {
+      return Optional.of(
+          new HttpFastPath.Observation(StatusTracker.State.NO_SLOT, Optional.empty()));
     }
 
-    List<WebElement> deliverySlotElements = panelElement.findElements(By.cssSelector(
-        // "div > div > div > div > div:nth-child(2) > div > div > div"
-        "div.module-wrapper:nth-child(2) > div > div > div"
-    ));
-
-    Optional<String> header = deliverySlotElements.stream()
-        .map(el -> el.findElement(By.tagName("div")))  // gets first div child
-        .filter(el -> el.findElements(By.tagName("div")).isEmpty())  // has no further children
-        .filter(el ->
-            Integer.parseInt(el.getCssValue("font-weight")) >= 500) // element is bold
-        .map(el -> el.getText()).findFirst();
-    Optional<String> detail = deliverySlotElements.stream()
-        .map(el -> el.findElement(By.tagName("div")))  // gets first div child
-        .filter(el -> el.getCssValue("display").equals("flex")) // element is flex
-        .map(el -> el.findElement(By.tagName("div")))  // gets first div sub-child
-        .map(el -> el.getText()).findFirst();
-
-    // TODO(anqid): Resolve duplicate code
-    long daysCount = deliverySlotElements.stream()
-            .map(el -> el.findElement(By.tagName("div")))  // gets first div child
-            .filter(el -> el.findElements(By.tagName("div")).isEmpty())  // has no further children
-            .filter(el ->
-                    Integer.parseInt(el.getCssValue("font-weight")) >= 500) // element is bold
-            .count();
-    long slotsCount = deliverySlotElements.stream()
-            .map(el -> el.findElement(By.tagName("div")))  // gets first div child
-            .filter(el -> el.getCssValue("display").equals("flex")) // element is flex
-            .count();
-
-    if (header.isEmpty() && detail.isEmpty()) {
-      return new StatusCheckOutput(StatusCheckOutput.Result.SCRAPE_ERROR);
-    } else {
-      Status status = statusTracker.update(StatusTracker.State.HAS_SLOT);
+    if (summary.header.isEmpty() && summary.detail.isEmpty()) {
+      return Optional.empty();
+    }
 
-      String message = String.format("Spots available for %s%s & %d more on %d days",
-              header.map(s -> s + " ").orElse(""),
-              detail.orElse(""),
-              slotsCount - 1, daysCount - 1);
-      status.notificationMessage = Optional.of(message);
-      log(message);
+    String message = String.format("Spots available for %s%s & %d more on %d days",
+            summary.header.map(s -> s + " ").orElse(""),
+            summary.detail.orElse(""),
+            summary.slotsCount - 1, summary.daysCount - 1);
+    return Optional.of(new HttpFastPath.Observation(StatusTracker.State.HAS_SLOT,
+        Optional.of(message),
+        Optional.of((int) summary.slotsCount),
+        summary.detail
+            .map(d -> summary.header.map(h -> h + " ").orElse("") + d)
+            .or(() -> summary.header)));
+  }
 
-      return new StatusCheckOutput(status);
+  /**
+   * Loads a delivery info page, logging in if need be, and reads it. Leaves {@link #statusTracker}
+   * alone, so that it can read other stores' pages too.
+   *
+   * @return Empty if the page couldn't be loaded, or didn't say either way.
+   */
+  protected Optional<HttpFastPath.Observation> observeDeliveryInfoPage(String deliveryInfoPage) {
+    if (!tryToLoadPageWithAttemptedLogin(deliveryInfoPage,
+            ImmutableSet.of(deliveryInfoPage), DELIVERY_PANEL_QUERY, "delivery info page")) {
+      logErr(String.format("Failed to load delivery info page %s (URL %s)",
+              deliveryInfoPage, driver.getCurrentUrl()));
+      return Optional.empty();
     }
+    return checkAvailabilityOnDeliveryInfoPage();
+  }
+
+  /** This checker's delivery info; by default, read from {@link #getDeliveryInfoPage()}. */
+  protected Optional<HttpFastPath.Observation> observeDeliveryInfo() {
+    return observeDeliveryInfoPage(getDeliveryInfoPage());
   }
 
+  // Only the delivery panel and button text are read
   @Override
-  public final Optional<Status> doCheck() {
-    if (!tryToLoadPageWithAttemptedLogin(
-            getDeliveryInfoPage(), ImmutableSet.of(getDeliveryInfoPage()))) {
-      logErr(String.format("Failed to load delivery info page (URL %s), giving up",
-              driver.getCurrentUrl()));
-      return Optional.empty();
-    }
+  protected BrowserProfile getBrowserProfile() {
+    return BrowserProfile.LEAN;
+  }
 
-    {
-      StatusCheckOutput deliveryInfoPageStatus = checkAvailabilityOnDeliveryInfoPage();
-      if (deliveryInfoPageStatus.result == StatusCheckOutput.Result.DEFINITE_GOOD) {
-        return Optional.of(deliveryInfoPageStatus.status);
-      } else if (deliveryInfoPageStatus.result == StatusCheckOutput.Result.DEFINITE_FAIL) {
-        log("no slots");
-        return Optional.of(statusTracker.update(StatusTracker.State.NO_SLOT));
-      }
+  @Override
+  protected final Optional<Status> runCheck() {
+    Optional<HttpFastPath.Observation> deliveryInfo = observeDeliveryInfo();
+    if (deliveryInfo.isPresent()) {
+      log(deliveryInfo.get().message.orElse("no slots"));
+      return Optional.of(applyObservation(deliveryInfo.get()));
     }
 
-    if (!tryToLoadPageWithAttemptedLogin(getHomePage(), getAcceptedHomeUrls())) {
+    // The storefront's delivery button is a second opinion, for when the panel didn't give one
+    if (!tryToLoadPageWithAttemptedLogin(getHomePage(), getAcceptedHomeUrls(),
+            By.cssSelector(getDeliveryTimeButtonSelector()), "home page")) {
       logErr(String.format("Failed to log in (URL %s), giving up", driver.getCurrentUrl()));
       return Optional.empty();
     }
@@ -0,0 +1,70 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.openqa.selenium.chrome.ChromeOptions;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * How much of each page a browser loads. Checkers only read a few elements off each page, so most
+ * of them can skip the images, web fonts, ads and trackers that make up the bulk of a store page.
+ * <p>
+ * Browsers are started with a profile and keep it; the {@link WebDriverPool} only leases a
+ * checker a browser with the profile it asked for.
+ */
+public enum BrowserProfile {
+  /** Everything loads, as in a normal browser. */
+  FULL,
+  /**
+   * No images, and no requests at all to {@link #getBlockedHosts()}. Fonts served by the site
+   * itself, and media, still load: without request interception, which Selenium 3 can't do in
+   * Chrome, they can't be told apart from the scripts the page needs.
+   */
+  LEAN;
+
+  /** Third-party hosts that serve fonts, ads and analytics; subdomains are blocked too. */
+  private static final List<String> LEAN_BLOCKED_HOSTS = ImmutableList.of(
+      "fonts.googleapis.com",
+      "fonts.gstatic.com",
+      "google-analytics.com",
+      "googletagmanager.com",
+      "googleadservices.com",
+      "googlesyndication.com",
+      "doubleclick.net",
+      "connect.facebook.net",
+      "bat.bing.com",
+      "ct.pinterest.com",
+      "sc-static.net",
+      "hotjar.com",
+      "segment.io",
+      "cdn.segment.com",
+      "amplitude.com",
+      "nr-data.net",
+      "js-agent.newrelic.com",
+      "criteo.com",
+      "criteo.net");
+
+  /** Hosts this profile keeps the browser from contacting. */
+  public List<String> getBlockedHosts() {
+    return this == LEAN ? LEAN_BLOCKED_HOSTS : ImmutableList.of();
+  }
+
+  void apply(ChromeOptions chromeOptions) {
+    if (this != LEAN) { return; }
+
+    // Turned off both ways, since which of the two a given Chrome honours (headless especially)
+    // has varied between versions
+    chromeOptions.setExperimentalOption("prefs",
+        ImmutableMap.of("profile.managed_default_content_settings.images", 2));
+    chromeOptions.addArguments("--blink-settings=imagesEnabled=false");
+
+    // Blocked hosts fail to resolve, so their requests fail without touching the network
+    chromeOptions.addArguments("--host-resolver-rules=" + LEAN_BLOCKED_HOSTS.stream()
+        .flatMap(host -> Stream.of(host, "*." + host))
+        .map(pattern -> "MAP " + pattern + " ~NOTFOUND")
+        .collect(Collectors.joining(", ")));
+  }
+}
@@ -0,0 +1,193 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import twitter4j.JSONArray;
+import twitter4j.JSONException;
+import twitter4j.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Cookies and local storage belonging to one site login, kept outside of any particular browser
+ * so that they can follow a checker between pooled browsers, and be saved across restarts (see
+ * {@link #toJson()}).
+ * <p>
+ * WebDriver only exposes cookies for the page currently loaded, so each origin is visited (via a
+ * cheap {@code /robots.txt} load) before its cookies are read or written.
+ */
+class BrowserSession implements WebDriverPool.Tenant {
+  private final List<String> origins;
+  private final LongSupplier generation;
+
+  /** Origin to cookies last seen there. */
+  private final Map<String, List<Cookie>> cookiesByOrigin = new ConcurrentHashMap<>();
+  /** Origin to local storage last seen there. */
+  private final Map<String, Map<String, String>> localStorageByOrigin = new ConcurrentHashMap<>();
+
+  private static final String READ_LOCAL_STORAGE_SCRIPT =
+      "var items = {};" +
+      "for (var i = 0; i < window.localStorage.length; i++) {" +
+      "  var key = window.localStorage.key(i);" +
+      "  items[key] = window.localStorage.getItem(key);" +
+      "}" +
+      "return items;";
+  private static final String WRITE_LOCAL_STORAGE_SCRIPT =
+      "var items = arguments[0];" +
+      "for (var key in items) { window.localStorage.setItem(key, items[key]); }";
+
+  /**
+   * @param origins    Scheme and host of every site this session logs into, e.g.
+   *                   {@code https://shop.shipt.com}.
+   * @param generation Counts logins to the session; see
+   *                   {@link WebDriverPool.Tenant#getGeneration()}.
+   */
+  BrowserSession(Collection<String> origins, LongSupplier generation) {
+    this.origins = ImmutableList.copyOf(origins);
+    this.generation = generation;
+  }
+
+  @Override
+  public long getGeneration() {
+    return generation.getAsLong();
+  }
+
+  /** Adds a cookie to be set the next time this session is restored into a browser. */
+  void seedCookie(String origin, Cookie cookie) {
+    cookiesByOrigin.compute(origin, (o, existing) -> {
+      List<Cookie> cookies = existing == null ? new ArrayList<>() : new ArrayList<>(existing);
+      cookies.add(cookie);
+      return ImmutableList.copyOf(cookies);
+    });
+  }
+
+  private static void visit(RemoteWebDriver driver, String origin) {
+    String currentUrl = driver.getCurrentUrl();
+    if (currentUrl == null || !currentUrl.startsWith(origin)) {
+      driver.get(origin + "/robots.txt");
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public synchronized void saveSession(RemoteWebDriver driver) {
+    for (String origin : origins) {
+      visit(driver, origin);
+      cookiesByOrigin.put(origin, ImmutableList.copyOf(driver.manage().getCookies()));
+
+      ImmutableMap.Builder<String, String> localStorage = ImmutableMap.builder();
+      ((Map<String, Object>) driver.executeScript(READ_LOCAL_STORAGE_SCRIPT))
+          .forEach((key, value) -> localStorage.put(key, String.valueOf(value)));
+      localStorageByOrigin.put(origin, localStorage.build());
+    }
+  }
+
+  @Override
+  public synchronized void restoreSession(RemoteWebDriver driver) {
+    Date now = new Date();
+    for (String origin : origins) {
+      List<Cookie> cookies = cookiesByOrigin.getOrDefault(origin, ImmutableList.of());
+      Map<String, String> localStorage =
+          localStorageByOrigin.getOrDefault(origin, ImmutableMap.of());
+      if (cookies.isEmpty() && localStorage.isEmpty()) { continue; }
+
+      visit(driver, origin);
+      for (Cookie cookie : cookies) {
+        if (cookie.getExpiry() != null && cookie.getExpiry().before(now)) { continue; }
+        try {
+          driver.manage().addCookie(cookie);
+        } catch (WebDriverException e) {
+          // Typically a cookie scoped to a sibling domain; it will be set again on next login
+        }
+      }
+      if (!localStorage.isEmpty()) {
+        driver.executeScript(WRITE_LOCAL_STORAGE_SCRIPT, localStorage);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void clearSession(RemoteWebDriver driver) {
+    for (String origin : origins) {
+      visit(driver, origin);
+      driver.manage().deleteAllCookies();
+      driver.executeScript("window.localStorage.clear(); window.sessionStorage.clear();");
+    }
+  }
+
+  /** Everything last seen of this session, for {@link #loadJson(String)} in a later run. */
+  synchronized String toJson() {
+    JSONObject json = new JSONObject();
+    try {
+      for (String origin : origins) {
+        JSONArray cookies = new JSONArray();
+        for (Cookie cookie : cookiesByOrigin.getOrDefault(origin, ImmutableList.of())) {
+          JSONObject c = new JSONObject();
+          c.put("name", cookie.getName());
+          c.put("value", cookie.getValue());
+          c.put("domain", cookie.getDomain());
+          c.put("path", cookie.getPath());
+          if (cookie.getExpiry() != null) {
+            c.put("expiry", cookie.getExpiry().getTime());
+          }
+          c.put("secure", cookie.isSecure());
+          c.put("httpOnly", cookie.isHttpOnly());
+          cookies.put(c);
+        }
+
+        JSONObject o = new JSONObject();
+        o.put("cookies", cookies);
+        o.put("localStorage",
+            new JSONObject(localStorageByOrigin.getOrDefault(origin, ImmutableMap.of())));
+        json.put(origin, o);
+      }
+    } catch (JSONException e) {
+      throw new IllegalStateException("Strings and longs always serialize", e);
+    }
+    return json.toString();
+  }
+
+  /**
+   * Takes on a session saved by {@link #toJson()}, replacing what was known of it. Origins this
+   * session doesn't have (e.g. saved while replaying) are ignored.
+   */
+  synchronized void loadJson(String saved) throws JSONException {
+    JSONObject json = new JSONObject(saved);
+    for (String origin : origins) {
+      if (!json.has(origin)) { continue; }
+      JSONObject o = json.getJSONObject(origin);
+
+      List<Cookie> cookies = new ArrayList<>();
+      JSONArray savedCookies = o.getJSONArray("cookies");
+      for (int i = 0; i < savedCookies.length(); i++) {
+        JSONObject c = savedCookies.getJSONObject(i);
+        cookies.add(new Cookie.Builder(c.getString("name"), c.getString("value"))
+            .domain(c.optString("domain", null))
+            .path(c.optString("path", "/"))
+            .expiresOn(c.has("expiry") ? new Date(c.getLong("expiry")) : null)
+            .isSecure(c.optBoolean("secure"))
+            .isHttpOnly(c.optBoolean("httpOnly"))
+            .build());
+      }
+      cookiesByOrigin.put(origin, ImmutableList.copyOf(cookies));
+
+      ImmutableMap.Builder<String, String> localStorage = ImmutableMap.builder();
+      JSONObject savedStorage = o.getJSONObject("localStorage");
+      for (Iterator<String> keys = savedStorage.keys(); keys.hasNext(); ) {
+        String key = keys.next();
+        localStorage.put(key, savedStorage.getString(key));
+      }
+      localStorageByOrigin.put(origin, localStorage.build());
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package dong.anqi.grocery;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decides when a pooled browser should be replaced with a fresh one. Chrome leaks memory over long
+ * sessions, and a browser that has gone bad tends to fail every check it's given, so a browser is
+ * replaced once it has served a number of checks, once its processes use too much memory, or
+ * after a run of failed checks.
+ * <p>
+ * Replacing a browser doesn't affect the checkers using it: their logins move to the new browser
+ * like they would between any two browsers in the pool, and their statuses live elsewhere.
+ */
+public class BrowserSupervisor {
+  private static final long MB = 1024 * 1024;
+
+  /** What the supervisor knows about one browser. Only touched by the browser's lease holder. */
+  static final class Record {
+    private int checks = 0;
+    private int consecutiveFailures = 0;
+    /** Chrome's main process; looked up on the first memory sample. */
+    private Optional<Long> browserPid = null;
+  }
+
+  private final int maxChecks;
+  private final long maxRssBytes;
+  private final int maxConsecutiveFailures;
+
+  /**
+   * @param maxRssBytes Memory ceiling for the browser's processes together. Only enforced where
+   *                    {@code /proc} is available.
+   */
+  public BrowserSupervisor(int maxChecks, long maxRssBytes, int maxConsecutiveFailures) {
+    if (maxChecks < 1 || maxRssBytes < 1 || maxConsecutiveFailures < 1) {
+      throw new IllegalArgumentException("Limits must be positive");
+    }
+
+    this.maxChecks = maxChecks;
+    this.maxRssBytes = maxRssBytes;
+    this.maxConsecutiveFailures = maxConsecutiveFailures;
+  }
+
+  /**
+   * Counts a check that {@code driver} was used for.
+   *
+   * @param failed Whether the check came to nothing, e.g. because it threw.
+   * @return Why {@code driver} should be replaced; empty if it's fit to keep.
+   */
+  Optional<String> afterCheck(Record record, RemoteWebDriver driver, boolean failed) {
+    record.checks++;
+    record.consecutiveFailures = failed ? record.consecutiveFailures + 1 : 0;
+
+    if (record.consecutiveFailures >= maxConsecutiveFailures) {
+      return Optional.of(
+          String.format("its last %d checks failed", record.consecutiveFailures));
+    }
+    if (record.checks >= maxChecks) {
+      return Optional.of(String.format("it has served %d checks", record.checks));
+    }
+
+    if (record.browserPid == null) {
+      record.browserPid = findBrowserPid(driver);
+    }
+    Optional<Long> rss = record.browserPid.flatMap(ProcessTree::treeRssBytes);
+    if (rss.isPresent() && rss.get() > maxRssBytes) {
+      return Optional.of(String.format("it is using %d MB", rss.get() / MB));
+    }
+    return Optional.empty();
+  }
+
+  /** Chrome's main process, found by the temporary profile chromedriver started it with. */
+  private static Optional<Long> findBrowserPid(RemoteWebDriver driver) {
+    try {
+      Object chrome = driver.getCapabilities().getCapability("chrome");
+      Object userDataDir = chrome instanceof Map ? ((Map<?, ?>) chrome).get("userDataDir") : null;
+      if (userDataDir == null) {
+        return Optional.empty();
+      }
+      return ProcessTree.findRootWithArgument("--user-data-dir=" + userDataDir);
+    } catch (WebDriverException e) {
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package dong.anqi.grocery;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Where each checker's time goes, and how its checks turn out: a {@link LatencyHistogram} per
+ * checker and {@link Phase}, plus outcome, overrun, deadline and page resource counters.
+ * Thread-safe.
+ * <p>
+ * Phases nest, e.g. a page load is part of a check, so phase times don't add up to the check's.
+ * Readable over JMX (see {@link #registerMBean()}) and as text (see {@link #render()}).
+ */
+public class CheckMetrics implements CheckMetricsMXBean {
+  public enum Phase {
+    /** A whole check, from the scheduler's point of view. */
+    CHECK,
+    /** Waiting for a browser from the pool. */
+    BROWSER_WAIT,
+    FAST_PATH,
+    PAGE_LOAD,
+    LOGIN,
+    STORE_SELECTION,
+    /** Reading the page once it's loaded, e.g. with {@link ElementSnapshot}s. */
+    EXTRACTION,
+    /** Delivering a notification about the checker, on the dispatcher's threads. */
+    NOTIFICATION;
+
+    String label() { return name().toLowerCase(Locale.ROOT); }
+  }
+
+  public enum Outcome {
+    /** The check produced a status, whether or not there were slots. */
+    SUCCESS,
+    /** The check gave up without a status, e.g. because the page didn't scrape. */
+    EMPTY,
+    EXCEPTION;
+
+    String label() { return name().toLowerCase(Locale.ROOT); }
+  }
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+  private static class CheckerEntry {
+    final Map<Phase, LatencyHistogram> phases = new ConcurrentHashMap<>();
+    final AtomicLongArray outcomes = new AtomicLongArray(Outcome.values().length);
+    final AtomicLong overruns = new AtomicLong();
+    final AtomicLong deadlineMisses = new AtomicLong();
+    final AtomicLong pageRequests = new AtomicLong();
+    final AtomicLong pageBytes = new AtomicLong();
+    final AtomicLong blockedRequests = new AtomicLong();
+  }
+
+  private final Map<String, CheckerEntry> checkers = new ConcurrentHashMap<>();
+
+  /** Times one phase; recorded when closed. */
+  public static final class Span implements AutoCloseable {
+    private final LatencyHistogram histogram;
+    private final long startNanos = System.nanoTime();
+
+    private Span(LatencyHistogram histogram) {
+      this.histogram = histogram;
+    }
+
+    @Override
+    public void close() {
+      histogram.record(Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+  }
+
+  private CheckerEntry entry(String checker) {
+    return checkers.computeIfAbsent(checker, c -> new CheckerEntry());
+  }
+
+  private LatencyHistogram histogram(String checker, Phase phase) {
+    return entry(checker).phases.computeIfAbsent(phase, p -> new LatencyHistogram());
+  }
+
+  /** Starts timing {@code phase}; use in a try-with-resources block. */
+  public Span time(String checker, Phase phase) {
+    return new Span(histogram(checker, phase));
+  }
+
+  public void record(String checker, Phase phase, Duration latency) {
+    histogram(checker, phase).record(latency);
+  }
+
+  public void recordOutcome(String checker, Outcome outcome) {
+    entry(checker).outcomes.incrementAndGet(outcome.ordinal());
+  }
+
+  /** A check that took longer than the checker's check interval. */
+  public void recordOverrun(String checker) {
+    entry(checker).overruns.incrementAndGet();
+  }
+
+  /** A check that was aborted for running past the scheduler's deadline. */
+  public void recordDeadlineMiss(String checker) {
+    entry(checker).deadlineMisses.incrementAndGet();
+  }
+
+  /**
+   * Requests a page made and bytes it transferred, and requests its {@link BrowserProfile} blocked.
+   * Comparing bytes per check between profiles shows what blocking saves.
+   */
+  public void recordPageResources(String checker, long requests, long bytes, long blocked) {
+    CheckerEntry entry = entry(checker);
+    entry.pageRequests.addAndGet(requests);
+    entry.pageBytes.addAndGet(bytes);
+    entry.blockedRequests.addAndGet(blocked);
+  }
+
+  public void registerMBean() throws JMException {
+    ManagementFactory.getPlatformMBeanServer().registerMBean(
+        this, new ObjectName("dong.anqi.grocery:type=CheckMetrics"));
+  }
+
+  private <T> Map<String, T> byPhase(Function<LatencyHistogram, T> value) {
+    Map<String, T> result = new TreeMap<>();
+    checkers.forEach((checker, entry) -> entry.phases.forEach((phase, histogram) ->
+        result.put(checker + ": " + phase.label(), value.apply(histogram))));
+    return result;
+  }
+
+  private Map<String, Long> byChecker(ToLongFunction<CheckerEntry> value) {
+    Map<String, Long> result = new TreeMap<>();
+    checkers.forEach((checker, entry) -> result.put(checker, value.applyAsLong(entry)));
+    return result;
+  }
+
+  private static double millis(Duration d) {
+    return d.toNanos() / 1e6;
+  }
+
+  @Override
+  public Map<String, Long> getPhaseCounts() { return byPhase(LatencyHistogram::getCount); }
+
+  @Override
+  public Map<String, Double> getMedianMillis() { return byPhase(h -> millis(h.getQuantile(0.5))); }
+
+  @Override
+  public Map<String, Double> getP99Millis() { return byPhase(h -> millis(h.getQuantile(0.99))); }
+
+  @Override
+  public Map<String, Double> getMaxMillis() { return byPhase(h -> millis(h.getMax())); }
+
+  @Override
+  public Map<String, Long> getSuccessCounts() {
+    return byChecker(e -> e.outcomes.get(Outcome.SUCCESS.ordinal()));
+  }
+
+  @Override
+  public Map<String, Long> getEmptyCounts() {
+    return byChecker(e -> e.outcomes.get(Outcome.EMPTY.ordinal()));
+  }
+
+  @Override
+  public Map<String, Long> getExceptionCounts() {
+    return byChecker(e -> e.outcomes.get(Outcome.EXCEPTION.ordinal()));
+  }
+
+  @Override
+  public Map<String, Long> getOverrunCounts() { return byChecker(e -> e.overruns.get()); }
+
+  @Override
+  public Map<String, Long> getDeadlineMissCounts() {
+    return byChecker(e -> e.deadlineMisses.get());
+  }
+
+  @Override
+  public Map<String, Long> getPageRequestCounts() { return byChecker(e -> e.pageRequests.get()); }
+
+  @Override
+  public Map<String, Long> getPageBytes() { return byChecker(e -> e.pageBytes.get()); }
+
+  @Override
+  public Map<String, Long> getBlockedRequestCounts() {
+    return byChecker(e -> e.blockedRequests.get());
+  }
+
+  @Override
+  public String getReport() { return render(); }
+
+  private static String quote(String labelValue) {
+    return '"' + labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+  }
+
+  /**
+   * Everything, in the Prometheus text exposition format, e.g.
+   * {@code grocery_phase_seconds{checker="Weee",phase="page_load",quantile="0.99"} 2.31}.
+   */
+  public String render() {
+    StringBuilder phases = new StringBuilder()
+        .append("# TYPE grocery_phase_seconds summary\n");
+    StringBuilder outcomes = new StringBuilder()
+        .append("# TYPE grocery_check_outcomes_total counter\n");
+    StringBuilder overruns = new StringBuilder()
+        .append("# TYPE grocery_check_overruns_total counter\n");
+    StringBuilder deadlineMisses = new StringBuilder()
+        .append("# TYPE grocery_check_deadline_misses_total counter\n");
+    StringBuilder pageRequests = new StringBuilder()
+        .append("# TYPE grocery_page_requests_total counter\n");
+    StringBuilder pageBytes = new StringBuilder()
+        .append("# TYPE grocery_page_bytes_total counter\n");
+    StringBuilder blockedRequests = new StringBuilder()
+        .append("# TYPE grocery_blocked_requests_total counter\n");
+
+    new TreeMap<>(checkers).forEach((checker, entry) -> {
+      String checkerLabel = "checker=" + quote(checker);
+      new TreeMap<>(entry.phases).forEach((phase, histogram) -> {
+        String labels = checkerLabel + ",phase=" + quote(phase.label());
+        for (double q : QUANTILES) {
+          phases.append(String.format(Locale.ROOT,
+              "grocery_phase_seconds{%s,quantile=\"%s\"} %.6f\n",
+              labels, q, histogram.getQuantile(q).toNanos() / 1e9));
+        }
+        phases.append(String.format(Locale.ROOT, "grocery_phase_seconds_sum{%s} %.6f\n",
+            labels, histogram.getTotal().toNanos() / 1e9));
+        phases.append(String.format(Locale.ROOT, "grocery_phase_seconds_count{%s} %d\n",
+            labels, histogram.getCount()));
+      });
+
+      for (Outcome outcome : Outcome.values()) {
+        outcomes.append(String.format("grocery_check_outcomes_total{%s,outcome=%s} %d\n",
+            checkerLabel, quote(outcome.label()), entry.outcomes.get(outcome.ordinal())));
+      }
+      overruns.append(String.format("grocery_check_overruns_total{%s} %d\n",
+          checkerLabel, entry.overruns.get()));
+      deadlineMisses.append(String.format("grocery_check_deadline_misses_total{%s} %d\n",
+          checkerLabel, entry.deadlineMisses.get()));
+      pageRequests.append(String.format("grocery_page_requests_total{%s} %d\n",
+          checkerLabel, entry.pageRequests.get()));
+      pageBytes.append(String.format("grocery_page_bytes_total{%s} %d\n",
+          checkerLabel, entry.pageBytes.get()));
+      blockedRequests.append(String.format("grocery_blocked_requests_total{%s} %d\n",
+          checkerLabel, entry.blockedRequests.get()));
+    });
+
+    return phases.append(outcomes).append(overruns).append(deadlineMisses)
+        .append(pageRequests).append(pageBytes).append(blockedRequests).toString();
+  }
+}
@@ -0,0 +1,36 @@
+package dong.anqi.grocery;
+
+import java.util.Map;
+
+/**
+ * {@link CheckMetrics} as seen over JMX, e.g. from JConsole. Latency maps are keyed by
+ * "checker: phase", counter maps by checker.
+ */
+public interface CheckMetricsMXBean {
+  Map<String, Long> getPhaseCounts();
+
+  Map<String, Double> getMedianMillis();
+
+  Map<String, Double> getP99Millis();
+
+  Map<String, Double> getMaxMillis();
+
+  Map<String, Long> getSuccessCounts();
+
+  Map<String, Long> getEmptyCounts();
+
+  Map<String, Long> getExceptionCounts();
+
+  Map<String, Long> getOverrunCounts();
+
+  Map<String, Long> getDeadlineMissCounts();
+
+  Map<String, Long> getPageRequestCounts();
+
+  Map<String, Long> getPageBytes();
+
+  Map<String, Long> getBlockedRequestCounts();
+
+  /** Everything, in the same text format as the metrics endpoint. */
+  String getReport();
+}
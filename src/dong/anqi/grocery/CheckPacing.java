@@ -0,0 +1,84 @@
+package dong.anqi.grocery;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Decides how long to wait before a checker's next check, starting from its
+ * {@linkplain GrocerySlotChecker#getPreferredCheckFrequency() preferred frequency}:
+ * <ul>
+ *   <li>Consecutive failed checks back off exponentially, so a broken site isn't hammered.</li>
+ *   <li>Right after a slot appears or disappears, a few checks run at a tighter interval, since
+ *       that is when the next change is most likely.</li>
+ *   <li>Hours when slots have tended to open get shorter intervals, and other hours longer ones
+ *       (see {@link SlotOpeningForecast}).</li>
+ *   <li>Every interval gets some jitter, so checkers don't drift into lockstep.</li>
+ * </ul>
+ * Not thread-safe; each checker gets its own, used by one check at a time.
+ */
+class CheckPacing {
+  static final int MAX_BACKOFF_DOUBLINGS = 4;
+  static final int TIGHTENED_CHECKS = 3;
+  static final double TIGHTENED_FACTOR = 1.0 / 3;
+  static final double JITTER_FRACTION = 0.1;
+  static final Duration MIN_INTERVAL = Duration.ofSeconds(30);
+  static final Duration MAX_INTERVAL = Duration.ofHours(1);
+
+  private final Duration baseInterval;
+  private final Supplier<List<Instant>> slotOpenings;
+  private SlotOpeningForecast forecast = null;  // built on first use
+  private int consecutiveFailures = 0;
+  private int tightenedChecksLeft = 0;
+
+  /** @param slotOpenings Past slot openings to forecast from, re-read when a new one happens. */
+  CheckPacing(Duration baseInterval, Supplier<List<Instant>> slotOpenings) {
+    this.baseInterval = baseInterval;
+    this.slotOpenings = slotOpenings;
+  }
+
+  Duration getBaseInterval() { return baseInterval; }
+
+  /** Records the result of a check, and returns the delay until the next one. */
+  Duration nextInterval(Optional<GrocerySlotChecker.Status> result, Random random) {
+    double factor;
+    if (result.isEmpty()) {
+      consecutiveFailures++;
+      tightenedChecksLeft = 0;
+      factor = 1L << Math.min(consecutiveFailures, MAX_BACKOFF_DOUBLINGS);
+    } else {
+      consecutiveFailures = 0;
+      if (result.get().isEdgeTransition) {
+        tightenedChecksLeft = TIGHTENED_CHECKS;
+        if (result.get().slotFound) {
+          forecast = null;  // learn from the new opening
+        }
+      }
+
+      if (tightenedChecksLeft > 0) {
+        tightenedChecksLeft--;
+        factor = TIGHTENED_FACTOR;
+      } else {
+        factor = 1;
+      }
+    }
+
+    if (forecast == null) {
+      forecast = SlotOpeningForecast.fromOpenings(slotOpenings.get(), ZoneId.systemDefault());
+    }
+    factor *= forecast.intervalFactor(Instant.now());
+
+    return withJitter(baseInterval.toMillis() * factor, random);
+  }
+
+  static Duration withJitter(double millis, Random random) {
+    double jitter = 1 + JITTER_FRACTION * (2 * random.nextDouble() - 1);
+    long jittered = Math.round(millis * jitter);
+    return Duration.ofMillis(Math.max(MIN_INTERVAL.toMillis(),
+        Math.min(MAX_INTERVAL.toMillis(), jittered)));
+  }
+}
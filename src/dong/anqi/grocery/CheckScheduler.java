@@ -0,0 +1,147 @@
+package dong.anqi.grocery;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs each checker on its own cadence (see {@link CheckPacing}). Each checker's first check is
+ * offset by a share of its interval, so that checks are spread out instead of all firing at once.
+ * <p>
+ * Checks reschedule themselves when they finish, so a checker never overlaps with itself, and a
+ * check that throws doesn't stop later checks.
+ * <p>
+ * The timer only keeps time; each check runs on its own thread from a separate executor (see
+ * {@link #newCheckExecutor()}), so a check sleeping or stuck on a slow site doesn't hold up
+ * anyone else's. How many checks drive a browser at once is bounded by the {@link WebDriverPool}.
+ * <p>
+ * Every check is timed into {@link CheckMetrics}, and counted as an overrun if it took longer than
+ * the checker's base interval, i.e. if the checker can't keep up with its own cadence.
+ * <p>
+ * Since a check that never returns would never reschedule its checker, checks also run under a
+ * deadline. A check still running at its deadline is aborted (see
+ * {@link GrocerySlotChecker#abortCheck()}) and interrupted, and counted as a deadline miss.
+ */
+public class CheckScheduler {
+  /** Runs one check and handles its result, e.g. by sending notifications. */
+  @FunctionalInterface
+  public interface CheckTask {
+    /** @return The check's result; empty if it failed. */
+    Optional<GrocerySlotChecker.Status> run(GrocerySlotChecker checker);
+  }
+
+  private final ScheduledExecutorService timer;
+  private final ExecutorService checkExecutor;
+  private final CheckMetrics metrics;
+  private final Duration checkDeadline;
+  private final CheckTask task;
+  private final Random random = new Random();
+
+  /** @param checkDeadline How long a check may run before it's aborted. */
+  public CheckScheduler(ScheduledExecutorService timer, ExecutorService checkExecutor,
+      CheckMetrics metrics, Duration checkDeadline, CheckTask task) {
+    if (metrics == null || checkDeadline == null) { throw new NullPointerException(); }
+
+    this.timer = timer;
+    this.checkExecutor = checkExecutor;
+    this.metrics = metrics;
+    this.checkDeadline = checkDeadline;
+    this.task = task;
+  }
+
+  /**
+   * An executor that starts a thread per check: a virtual thread on JVMs that have them (21+),
+   * otherwise a pooled platform thread. Checks mostly block on sleeps and WebDriver calls, which
+   * is what virtual threads are cheap for.
+   */
+  public static ExecutorService newCheckExecutor() {
+    try {
+      // Looked up reflectively, since we still build for Java 11
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      AtomicInteger threadCount = new AtomicInteger();
+      return Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "checker-" + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  /** @param initialDelay Delay before the first checks may start. */
+  public void start(List<GrocerySlotChecker> checkers, Duration initialDelay) {
+    for (int i = 0; i < checkers.size(); i++) {
+      GrocerySlotChecker checker = checkers.get(i);
+      CheckPacing pacing =
+          new CheckPacing(checker.getPreferredCheckFrequency(), checker::getSlotOpenings);
+
+      Duration phase = pacing.getBaseInterval().multipliedBy(i).dividedBy(checkers.size());
+      long jitterMillis = (long) (random.nextDouble() * phase.toMillis() / checkers.size());
+      schedule(checker, pacing, initialDelay.plus(phase).plusMillis(jitterMillis));
+    }
+  }
+
+  /**
+   * Starts checking a checker that wasn't ready for {@link #start}. Its first check comes at a
+   * random point within its interval.
+   */
+  public void add(GrocerySlotChecker checker) {
+    CheckPacing pacing =
+        new CheckPacing(checker.getPreferredCheckFrequency(), checker::getSlotOpenings);
+    long jitterMillis = (long) (random.nextDouble() * pacing.getBaseInterval().toMillis());
+    schedule(checker, pacing, Duration.ofMillis(jitterMillis));
+  }
+
+  private void schedule(GrocerySlotChecker checker, CheckPacing pacing, Duration delay) {
+    if (timer.isShutdown() || checkExecutor.isShutdown()) { return; }
+
+    timer.schedule(() -> {
+      Future<?> check = checkExecutor.submit(() -> runCheck(checker, pacing));
+      // Aborting can block on the browser, so it's done off the timer thread
+      timer.schedule(() -> checkExecutor.execute(() -> enforceDeadline(checker, check)),
+          checkDeadline.toMillis(), TimeUnit.MILLISECONDS);
+    }, delay.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private void runCheck(GrocerySlotChecker checker, CheckPacing pacing) {
+    long startNanos = System.nanoTime();
+    Optional<GrocerySlotChecker.Status> result = Optional.empty();
+    try {
+      result = task.run(checker);
+    } catch (Throwable t) {
+      // Printed here, since the executor's Future would swallow it without a trace
+      t.printStackTrace();
+    } finally {
+      // Whatever happened, the checker is checked again
+      Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+      metrics.record(checker.getDescription(), CheckMetrics.Phase.CHECK, elapsed);
+      if (elapsed.compareTo(pacing.getBaseInterval()) > 0) {
+        metrics.recordOverrun(checker.getDescription());
+      }
+
+      schedule(checker, pacing, pacing.nextInterval(result, random));
+    }
+  }
+
+  /** Aborts {@code check} if it's still running. Once it returns, it reschedules as usual. */
+  private void enforceDeadline(GrocerySlotChecker checker, Future<?> check) {
+    if (check.isDone()) { return; }
+
+    metrics.recordDeadlineMiss(checker.getDescription());
+    try {
+      checker.abortCheck();
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+    }
+    // Also wakes a check that's waiting rather than stuck in the browser, e.g. for a lock
+    check.cancel(true);
+  }
+}
@@ -0,0 +1,127 @@
+package dong.anqi.grocery;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Services shared by every checker in a runner. */
+public final class CheckerContext {
+  private final Logger logger;
+  private final WebDriverPool driverPool;
+  private final ReadinessStats readinessStats;
+  private final CheckMetrics metrics;
+  private final boolean fastPathEnabled;
+  private final Duration checkDeadline;
+  private final Optional<Path> journalDirectory;
+  private final Optional<Path> sessionDirectory;
+  private final Map<String, SharedSession> sharedSessions = new ConcurrentHashMap<>();
+
+  private CheckerContext(Builder builder) {
+    if (builder.logger == null || builder.driverPool == null) {
+      throw new NullPointerException();
+    }
+
+    this.logger = builder.logger;
+    this.driverPool = builder.driverPool;
+    this.readinessStats =
+        builder.readinessStats != null ? builder.readinessStats : new ReadinessStats();
+    this.metrics = builder.metrics != null ? builder.metrics : new CheckMetrics();
+    this.fastPathEnabled = builder.fastPathEnabled;
+    this.checkDeadline = builder.checkDeadline;
+    this.journalDirectory = Optional.ofNullable(builder.journalDirectory);
+    this.sessionDirectory = Optional.ofNullable(builder.sessionDirectory);
+  }
+
+  public Logger getLogger() { return logger; }
+
+  public WebDriverPool getDriverPool() { return driverPool; }
+
+  public ReadinessStats getReadinessStats() { return readinessStats; }
+
+  public CheckMetrics getMetrics() { return metrics; }
+
+  /** Whether checkers may poll site endpoints directly between browser checks. */
+  public boolean isFastPathEnabled() { return fastPathEnabled; }
+
+  /** How long a check may run before it's aborted; see {@link CheckScheduler}. */
+  public Duration getCheckDeadline() { return checkDeadline; }
+
+  /** Where checkers keep their {@link StatusJournal}s; empty to keep status in memory only. */
+  public Optional<Path> getJournalDirectory() { return journalDirectory; }
+
+  /**
+   * Where checkers save their logins (see {@link SessionVault}); empty to log in afresh on every
+   * start.
+   */
+  public Optional<Path> getSessionDirectory() { return sessionDirectory; }
+
+  /**
+   * The session that every checker asking for {@code name} shares, created with {@code origins}
+   * by the first to ask.
+   */
+  SharedSession getSharedSession(String name, Collection<String> origins) {
+    return sharedSessions.computeIfAbsent(name, n -> new SharedSession(n, origins));
+  }
+
+  public static Builder builder() { return new Builder(); }
+
+  public static final class Builder {
+    private Logger logger;
+    private WebDriverPool driverPool;
+    private ReadinessStats readinessStats;
+    private CheckMetrics metrics;
+    private boolean fastPathEnabled = false;
+    private Duration checkDeadline = Duration.ofSeconds(180);
+    private Path journalDirectory;
+    private Path sessionDirectory;
+
+    private Builder() {}
+
+    public Builder setLogger(Logger logger) {
+      this.logger = logger;
+      return this;
+    }
+
+    public Builder setDriverPool(WebDriverPool driverPool) {
+      this.driverPool = driverPool;
+      return this;
+    }
+
+    public Builder setReadinessStats(ReadinessStats readinessStats) {
+      this.readinessStats = readinessStats;
+      return this;
+    }
+
+    public Builder setMetrics(CheckMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    public Builder setFastPathEnabled(boolean fastPathEnabled) {
+      this.fastPathEnabled = fastPathEnabled;
+      return this;
+    }
+
+    public Builder setCheckDeadline(Duration checkDeadline) {
+      this.checkDeadline = checkDeadline;
+      return this;
+    }
+
+    public Builder setJournalDirectory(Path journalDirectory) {
+      this.journalDirectory = journalDirectory;
+      return this;
+    }
+
+    public Builder setSessionDirectory(Path sessionDirectory) {
+      this.sessionDirectory = sessionDirectory;
+      return this;
+    }
+
+    public CheckerContext build() {
+      return new CheckerContext(this);
+    }
+  }
+}
@@ -1,28 +1,28 @@
 package dong.anqi.grocery;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
+import javax.management.JMException;
 import javax.swing.*;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class CheckerHostRunner {
   private static void rateLimitSleep() {
@@ -36,20 +36,6 @@ public class CheckerHostRunner {
     }
   }
 
-  private static void generateNotification(String title, String body) {
-    try {
-      new ProcessBuilder("/usr/bin/notify-send", "-t", "30000", title, body).start();
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-
-    try {
-      new ProcessBuilder("/usr/bin/espeak", title + body).start();
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-  }
-
   private static void cliWait() throws IOException {
     System.out.println("Type q to quit");
 
@@ -84,8 +70,37 @@ public class CheckerHostRunner {
         });
   }
 
-  private static final DateTimeFormatter FILE_NAME_FORMAT =
-      DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+  /** Logs how often each checker has found slots over the last week. */
+  private static void logSlotHistory(ObservationStore observations, Logger logger) {
+    Instant now = Instant.now();
+    try {
+      observations.query().between(now.minus(Duration.ofDays(7)), now).summarizeByChecker()
+          .forEach((description, summary) -> logger.log(String.format(
+              "%s %s, last 7 days: %s", Utils.nowString(), description, summary)));
+    } catch (IOException e) {
+      logger.logErr(String.format("%s Couldn't read observations: %s", Utils.nowString(), e));
+    }
+  }
+
+  /** @param port Where to serve metrics; 0 or less for nowhere. */
+  private static Optional<MetricsServer> startMetricsServer(
+      CheckMetrics metrics, int port, Logger logger) {
+    if (port <= 0) { return Optional.empty(); }
+
+    try {
+      MetricsServer server = new MetricsServer(metrics, port);
+      logger.log(String.format("%s Serving metrics at http://localhost:%d/metrics",
+          Utils.nowString(), server.getPort()));
+      return Optional.of(server);
+    } catch (IOException e) {
+      logger.logErr(String.format("%s Couldn't serve metrics: %s", Utils.nowString(), e));
+      return Optional.empty();
+    }
+  }
+
+  private static List<String> descriptions(Collection<GrocerySlotChecker> checkers) {
+    return checkers.stream().map(GrocerySlotChecker::getDescription).collect(Collectors.toList());
+  }
 
   public static void main(String[] args) {
     final String homeDir = System.getProperty("user.home");
@@ -94,84 +109,184 @@ public class CheckerHostRunner {
 
     StatusDialog dialog = new StatusDialog();
 
-    Path logDirectory = Paths.get(homeDir, "tmp", "grocery-logs");
-    BufferedWriter writer;
+    AsyncFileLogger logger;
     try {
-      Files.createDirectories(logDirectory);
-      writer = new BufferedWriter(new FileWriter(
-          logDirectory.resolve("logs_" + FILE_NAME_FORMAT.format(LocalDateTime.now()) + ".txt").toFile()));
+      logger = new AsyncFileLogger(
+          Paths.get(homeDir, "tmp", "grocery-logs"),
+          Integer.getInteger("grocery.log.bufferLines", 8192),
+          Long.getLong("grocery.log.maxFileMegabytes", 64) * 1024 * 1024,
+          Duration.ofHours(Integer.getInteger("grocery.log.maxFileHours", 24)),
+          !Boolean.getBoolean("grocery.log.noCompress"),
+          ImmutableList.of(dialog::logText));
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
 
-    Logger logger = new Logger() {
-      @Override
-      public void log(String s) {
-        dialog.logText(s);
-        try {
-          writer.write(s);
-          writer.newLine();
-          writer.flush();
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-      }
-    };
+    WebDriverPool driverPool = new WebDriverPool(
+        Integer.getInteger("grocery.driverPool.size", 3),
+        Duration.ofMinutes(Integer.getInteger("grocery.driverPool.idleMinutes", 15)),
+        !Boolean.getBoolean("grocery.headed"),
+        Duration.ofSeconds(Integer.getInteger("grocery.driverPool.pageTimeoutSeconds", 30)),
+        new BrowserSupervisor(
+            Integer.getInteger("grocery.browser.maxChecks", 100),
+            Integer.getInteger("grocery.browser.maxMemoryMb", 2048) * 1024L * 1024L,
+            Integer.getInteger("grocery.browser.maxFailures", 3)),
+        logger);
 
-    List<GrocerySlotChecker> checkers = ImmutableList.of(
-        new ShiptSlotChecker(ShiptSlotChecker.Store.RANCH_99, logger),
-        new ShiptSlotChecker(ShiptSlotChecker.Store.TARGET, logger),
-        new InstacartSlotChecker(InstacartSlotChecker.Store.SPROUTS, logger),
-        new InstacartSlotChecker(InstacartSlotChecker.Store.H_MART, logger),
-        new CostcoSamedaySlotChecker(logger),
-        new WeeeDateAvailableChecker(false, logger)
-    );
+    ReadinessStats readinessStats = new ReadinessStats();
+
+    CheckMetrics metrics = new CheckMetrics();
+    try {
+      metrics.registerMBean();
+    } catch (JMException e) {
+      logger.logErr(String.format("%s Couldn't register metrics MBean: %s", Utils.nowString(), e));
+    }
+    Optional<MetricsServer> metricsServer =
+        startMetricsServer(metrics, Integer.getInteger("grocery.metrics.port", 9464), logger);
+
+    // Short of the default check interval; sweeps take no new store past half of it
+    Duration checkDeadline =
+        Duration.ofSeconds(Integer.getInteger("grocery.checkDeadlineSeconds", 180));
+
+    CheckerContext context = CheckerContext.builder()
+        .setLogger(logger)
+        .setDriverPool(driverPool)
+        .setReadinessStats(readinessStats)
+        .setMetrics(metrics)
+        .setFastPathEnabled(Boolean.getBoolean("grocery.fastPath"))
+        .setCheckDeadline(checkDeadline)
+        .setJournalDirectory(Paths.get(homeDir, "tmp", "grocery-journal"))
+        // Replayed logins are kept apart, so that they don't overwrite the real ones
+        .setSessionDirectory(Paths.get(homeDir, "tmp",
+            SiteUrls.isReplaying() ? "grocery-sessions-replay" : "grocery-sessions"))
+        .build();
+
+    // Each account is a creds/<name>.creds file. Stores are dealt out across accounts, which
+    // check in parallel; stores on the same account share sweeps.
+    List<ShiptAccount> shiptAccounts =
+        Arrays.stream(System.getProperty("grocery.shipt.accounts", "shipt").split(","))
+            .map(String::trim)
+            .map(ShiptAccount::new)
+            .collect(Collectors.toList());
+
+    // All Instacart stores are swept together through one login, so watching more of them costs
+    // little more than watching one
+    InstacartAccount instacartAccount = new InstacartAccount("instacart");
+    List<InstacartSlotChecker.Store> instacartStores =
+        Arrays.stream(System.getProperty("grocery.instacart.stores", "SPROUTS,H_MART").split(","))
+            .map(String::trim)
+            .map(InstacartSlotChecker.Store::valueOf)
+            .collect(Collectors.toList());
+
+    ImmutableMap.Builder<String, Supplier<GrocerySlotChecker>> checkerFactoriesBuilder =
+        ImmutableMap.<String, Supplier<GrocerySlotChecker>>builder()
+            .put("Shipt 99 Ranch", () -> new ShiptSlotChecker(
+                ShiptSlotChecker.Store.RANCH_99, shiptAccounts.get(0), context))
+            .put("Shipt Target", () -> new ShiptSlotChecker(
+                ShiptSlotChecker.Store.TARGET, shiptAccounts.get(1 % shiptAccounts.size()),
+                context));
+    for (InstacartSlotChecker.Store store : instacartStores) {
+      checkerFactoriesBuilder.put("Instacart " + store.displayName(),
+          () -> new InstacartSlotChecker(store, instacartAccount, context));
+    }
+    Map<String, Supplier<GrocerySlotChecker>> checkerFactories = checkerFactoriesBuilder
+        .put("Costco", () -> new CostcoSamedaySlotChecker(context))
+        .put("Weee", () -> new WeeeDateAvailableChecker(false, context))
+        .build();
+
+    // Browsers take a few seconds each to launch, so get them going while everything else starts.
+    // All of the checkers above load pages lean.
+    if (!Boolean.getBoolean("grocery.driverPool.noWarmUp")) {
+      driverPool.warmUp(checkerFactories.size(), BrowserProfile.LEAN);
+    }
+
+    ObservationStore observations;
+    try {
+      observations =
+          new ObservationStore(Paths.get(homeDir, "tmp", "grocery-observations"), logger);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
 
     TwitterClient twitterClient = new TwitterClient();
 
-    // TODO this needs to be in an effing class mate
-    Map<GrocerySlotChecker, Instant> rateLimitTracker = new HashMap<>();
+    NotificationDispatcher notifier = new NotificationDispatcher(64, 2, metrics, logger);
+    NotificationDispatcher.Channel desktopChannel = NotificationDispatcher.desktopChannel();
+    NotificationDispatcher.Channel speechChannel = NotificationDispatcher.speechChannel();
+    TwitterDigestSender twitterChannel =
+        new TwitterDigestSender(twitterClient, Duration.ofSeconds(20), logger);
+
     Consumer<GrocerySlotChecker> genericFailure = checker -> {
-      Duration timeSinceLast = Duration.between(
-          rateLimitTracker.getOrDefault(checker, Instant.EPOCH), Instant.now());
-      if (timeSinceLast.toMinutes() > 120) {
-        twitterClient.sendDirectMessage(checker.getDescription() + " failed to scrape");
-        rateLimitTracker.put(checker, Instant.now());
+      if (twitterChannel.shouldReportFailure(checker.getDescription(), Duration.ofMinutes(120))) {
+        notifier.submit(twitterChannel, checker.getDescription(),
+            checker.getDescription() + " failed to scrape");
       } else {
         System.out.printf("%s Scrape failure for %s, rate-limiting Twitter\n",
             Utils.nowString(), checker.getDescription());
       }
     };
 
-    ScheduledThreadPoolExecutor threadPoolExecutor = new ScheduledThreadPoolExecutor(4);
-    for (GrocerySlotChecker checker : checkers) {
-      threadPoolExecutor.scheduleAtFixedRate(() -> {
-        try {
-          checker.doCheck().ifPresentOrElse(status -> {
-            if (status.isEdgeTransition) {
-              String message = status.notificationMessage.orElse(
-                  "slot status: " + (status.slotFound ? "available" : getRandomNoString())) +
-                  getDurationDescription(status).map(s -> ", " + s).orElse("");
-
-              generateNotification(checker.getDescription(),
-                  message + (status.slotFound ? " go go go" : ""));
-              if (status.slotFound) {
-                twitterClient.sendDirectMessage(checker.getDescription() + ": " + message);
-              }
+    // One thread is plenty for keeping time; the checks themselves run elsewhere
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+    ExecutorService checkExecutor = CheckScheduler.newCheckExecutor();
+    CheckScheduler.CheckTask checkTask = checker -> {
+      try {
+        Optional<GrocerySlotChecker.Status> result = checker.doCheck();
+        observations.record(checker.getDescription(), Instant.now(), result);
+        metrics.recordOutcome(checker.getDescription(), result.isPresent() ?
+            CheckMetrics.Outcome.SUCCESS : CheckMetrics.Outcome.EMPTY);
+        result.ifPresentOrElse(status -> {
+          if (status.isEdgeTransition) {
+            String message = status.notificationMessage.orElse(
+                "slot status: " + (status.slotFound ? "available" : getRandomNoString())) +
+                getDurationDescription(status).map(s -> ", " + s).orElse("");
+
+            String alert = message + (status.slotFound ? " go go go" : "");
+            notifier.submit(desktopChannel, checker.getDescription(), alert);
+            notifier.submit(speechChannel, checker.getDescription(), alert);
+            if (status.slotFound) {
+              notifier.submit(twitterChannel, checker.getDescription(),
+                  checker.getDescription() + ": " + message);
             }
-          }, () -> genericFailure.accept(checker));
-        } catch (Exception e) {
-          twitterClient.sendDirectMessage(checker.getDescription() + " crashed");
-          e.printStackTrace();
-        }
-      }, 10, 200, TimeUnit.SECONDS);
-    }
+          }
+        }, () -> genericFailure.accept(checker));
+        return result;
+      } catch (Exception e) {
+        metrics.recordOutcome(checker.getDescription(), CheckMetrics.Outcome.EXCEPTION);
+        notifier.submit(twitterChannel, checker.getDescription(),
+            checker.getDescription() + " crashed");
+        e.printStackTrace();
+        return Optional.empty();
+      }
+    };
+    CheckScheduler scheduler =
+        new CheckScheduler(timer, checkExecutor, metrics, checkDeadline, checkTask);
+
+    // Includes checkers that start late, once they're ready
+    List<GrocerySlotChecker> checkers = new CopyOnWriteArrayList<>();
+    List<GrocerySlotChecker> startedCheckers = new CheckerStartup(checkExecutor, timer, logger)
+        .start(checkerFactories,
+            Duration.ofSeconds(Integer.getInteger("grocery.startup.deadlineSeconds", 30)),
+            checker -> {
+              checkers.add(checker);
+              dialog.setCheckerDescriptions(descriptions(checkers));
+              scheduler.add(checker);
+            });
+    checkers.addAll(startedCheckers);
+    dialog.setCheckerDescriptions(descriptions(checkers));
+    scheduler.start(startedCheckers, Duration.ofSeconds(10));
 
     dialog.setCallbacks(new StatusDialog.Callbacks() {
       @Override
       public void commandEntered(String command) {
         if (command.toUpperCase().equals("QQ")) {
           windowClosed();
+        } else if (command.toUpperCase().equals("LATENCY")) {
+          logger.log(readinessStats.summary());
+        } else if (command.toUpperCase().equals("METRICS")) {
+          logger.log(metrics.render());
+        } else if (command.toUpperCase().equals("HISTORY")) {
+          logSlotHistory(observations, logger);
         }
       }
 
@@ -184,6 +299,12 @@ public class CheckerHostRunner {
             e.printStackTrace();
           }
         }
+        driverPool.close();
+        metricsServer.ifPresent(MetricsServer::close);
+        notifier.close();
+        twitterChannel.close();
+        observations.close();
+        logger.close();
 
         System.exit(0);
       }
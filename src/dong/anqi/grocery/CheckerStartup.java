@@ -0,0 +1,107 @@
+package dong.anqi.grocery;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Builds checkers in parallel at startup, so that one slow or broken checker doesn't hold up or
+ * take down the rest.
+ * <p>
+ * {@link #start} waits for the checkers up to a deadline and returns those that are ready. Those
+ * still being built carry on in the background, and those that fail are retried with backoff;
+ * either way, they're handed over once built.
+ */
+public class CheckerStartup {
+  private static final Duration FIRST_RETRY_DELAY = Duration.ofMinutes(1);
+  private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(30);
+
+  private final ExecutorService executor;
+  private final ScheduledExecutorService timer;
+  private final Logger logger;
+
+  /**
+   * @param executor Builds the checkers.
+   * @param timer    Schedules retries; doesn't run any checker code itself.
+   */
+  public CheckerStartup(ExecutorService executor, ScheduledExecutorService timer, Logger logger) {
+    if (executor == null || timer == null || logger == null) {
+      throw new NullPointerException();
+    }
+
+    this.executor = executor;
+    this.timer = timer;
+    this.logger = logger;
+  }
+
+  /**
+   * @param factories Checker constructors by name (for logging), in the order the checkers should
+   *                  be listed.
+   * @param lateStart Receives each checker built after the deadline or on a retry, on a background
+   *                  thread.
+   * @return The checkers built within {@code deadline}, in {@code factories} order.
+   */
+  public List<GrocerySlotChecker> start(Map<String, Supplier<GrocerySlotChecker>> factories,
+      Duration deadline, Consumer<GrocerySlotChecker> lateStart) {
+    Map<String, CompletableFuture<GrocerySlotChecker>> builds = new LinkedHashMap<>();
+    factories.forEach((name, factory) ->
+        builds.put(name, CompletableFuture.supplyAsync(factory, executor)));
+
+    long deadlineNanos = System.nanoTime() + deadline.toNanos();
+    List<GrocerySlotChecker> started = new ArrayList<>();
+    builds.forEach((name, build) -> {
+      Supplier<GrocerySlotChecker> factory = factories.get(name);
+      try {
+        started.add(build.get(
+            Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS));
+      } catch (ExecutionException e) {
+        retry(name, factory, e.getCause(), FIRST_RETRY_DELAY, lateStart);
+      } catch (TimeoutException | InterruptedException e) {
+        if (e instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        logger.log(String.format("%s %s still starting after %ds, adding it once it's ready",
+            Utils.nowString(), name, deadline.getSeconds()));
+        build.whenComplete((checker, error) ->
+            finish(name, factory, checker, error, FIRST_RETRY_DELAY, lateStart));
+      }
+    });
+    return started;
+  }
+
+  private void finish(String name, Supplier<GrocerySlotChecker> factory,
+      GrocerySlotChecker checker, Throwable error, Duration retryDelay,
+      Consumer<GrocerySlotChecker> lateStart) {
+    if (error == null) {
+      logger.log(String.format("%s %s started", Utils.nowString(), name));
+      lateStart.accept(checker);
+    } else {
+      retry(name, factory, error instanceof CompletionException && error.getCause() != null ?
+          error.getCause() : error, retryDelay, lateStart);
+    }
+  }
+
+  private void retry(String name, Supplier<GrocerySlotChecker> factory, Throwable error,
+      Duration delay, Consumer<GrocerySlotChecker> lateStart) {
+    logger.logErr(String.format("%s %s failed to start, retrying in %dm: %s",
+        Utils.nowString(), name, delay.toMinutes(), error));
+    if (timer.isShutdown()) { return; }
+
+    Duration nextDelay = delay.multipliedBy(2).compareTo(MAX_RETRY_DELAY) < 0 ?
+        delay.multipliedBy(2) : MAX_RETRY_DELAY;
+    timer.schedule(() -> CompletableFuture.supplyAsync(factory, executor)
+            .whenComplete((checker, e) -> finish(name, factory, checker, e, nextDelay, lateStart)),
+        delay.toMillis(), TimeUnit.MILLISECONDS);
+  }
+}
@@ -7,29 +7,36 @@ import org.openqa.selenium.By;
 import org.openqa.selenium.Cookie;
 
 import java.time.Duration;
+import java.util.Optional;
 import java.util.Set;
 
 public final class CostcoSamedaySlotChecker extends BaseInstacartSlotChecker {
-  public CostcoSamedaySlotChecker(Logger logger) {
-    super("Costco", logger);
-
-    driver.get(HOME_PAGE);
-    driver.manage().addCookie(
-        new Cookie.Builder("memberPrimaryPostal", "95134").domain("costco.com").build());
-    driver.manage().addCookie(
-        new Cookie.Builder("direct_retailer_zip_code", "95134").domain("sameday.costco.com")
-            .build());
+  public CostcoSamedaySlotChecker(CheckerContext context) {
+    super("Costco", "Costco", ImmutableSet.of(SAMEDAY_ORIGIN, LOGIN_ORIGIN), context);
+
+    seedCookie(SAMEDAY_ORIGIN,
+        new Cookie.Builder("memberPrimaryPostal", "95134")
+            .domain(SiteUrls.cookieDomain("costco.com")).build());
+    seedCookie(SAMEDAY_ORIGIN,
+        new Cookie.Builder("direct_retailer_zip_code", "95134")
+            .domain(SiteUrls.cookieDomain("sameday.costco.com")).build());
   }
 
+  private static final String SAMEDAY_ORIGIN = SiteUrls.resolve("https://sameday.costco.com");
+  private static final String LOGIN_ORIGIN = SiteUrls.resolve("https://www.costco.com");
+
   private static final String CREDS_PATH = "creds/costco.creds";
 
-  private static final String LOGIN_PAGE = "https://www.costco.com/logon-instacart";
-  private static final String HOME_PAGE = "https://sameday.costco.com/store/costco/storefront";
+  private static final String LOGIN_PAGE = LOGIN_ORIGIN + "/logon-instacart";
+  private static final String HOME_PAGE = SAMEDAY_ORIGIN + "/store/costco/storefront";
   private static final String DELIVERY_INFO_PAGE =
-      "https://sameday.costco.com/store/costco/info?tab=delivery";
+      SAMEDAY_ORIGIN + "/store/costco/info?tab=delivery";
+
+  private static final String DELIVERY_CONTENT_ENDPOINT = SAMEDAY_ORIGIN + "/v3/" +
+      "containers/costco/next_gen/retailer_information/content/delivery?source=web";
 
   private static final Set<String> ACCEPTED_HOME_URLS = ImmutableSet
-      .of(HOME_PAGE, "https://sameday.costco.com/store/");
+      .of(HOME_PAGE, SAMEDAY_ORIGIN + "/store/");
 
   @Override
   protected String getHomePage() {
@@ -43,8 +50,8 @@ public final class CostcoSamedaySlotChecker extends BaseInstacartSlotChecker {
 
   @Contract(pure = true)
   @Override
-  protected @NotNull By getDeliveryTimeButtonQuery() {
-    return By.cssSelector("a[href~=\"/costco/info?tab=delivery\"]");
+  protected @NotNull String getDeliveryTimeButtonSelector() {
+    return "a[href~=\"/costco/info?tab=delivery\"]";
   }
 
   @Override
@@ -52,23 +59,35 @@ public final class CostcoSamedaySlotChecker extends BaseInstacartSlotChecker {
     return DELIVERY_INFO_PAGE;
   }
 
+  private static final Duration LOGIN_DEADLINE = Duration.ofSeconds(15);
+
+  @Override
+  protected Optional<String> getDeliveryContentEndpoint() {
+    return Optional.of(DELIVERY_CONTENT_ENDPOINT);
+  }
+
   @Override
-  protected void executeLogin() {
-    driver.get(LOGIN_PAGE);
+  protected boolean executeLogin() {
+    loadPage(LOGIN_PAGE);
     if (!driver.getCurrentUrl().equals(LOGIN_PAGE)) {
       log(String.format("URL navigated to %s, already logged in?", driver.getCurrentUrl()));
+      return true;
     } else {
-      Utils.startInterruptibleSleep(Duration.ofSeconds(5));
+      awaitReady("login form", LOGIN_DEADLINE, PageReadiness.allOf(
+          PageReadiness.elementPresent(By.id("logonId")),
+          PageReadiness.elementPresent(By.id("logonPassword"))));
 
-      // TODO: Set values using JavascriptExecutor so we can run headless
       Utils.Credentials creds = Utils.readCredentials(CREDS_PATH);
-      driver.findElement(By.id("logonId")).sendKeys(creds.user);
-      driver.findElement(By.id("logonPassword")).sendKeys(creds.pass);
-      driver.findElement(By.id("logonPassword")).submit();
+      fillField(By.id("logonId"), creds.user);
+      fillField(By.id("logonPassword"), creds.pass);
+      submitForm(By.id("logonPassword"));
 
-      Utils.startInterruptibleSleep(Duration.ofSeconds(6));
+      boolean submitted = awaitReady("login submit", LOGIN_DEADLINE, PageReadiness.allOf(
+          PageReadiness.urlNot(LOGIN_PAGE),
+          PageReadiness.settled()));
 
       log(String.format("URL %s after login attempt", driver.getCurrentUrl()));
+      return submitted;
     }
   }
 }
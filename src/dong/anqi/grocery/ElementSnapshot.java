@@ -0,0 +1,174 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Plain-Java copy of a DOM element (and optionally some of its subtree), captured by
+ * {@link AbstractGrocerySlotChecker#extract} in a single script call. Reading it costs no further
+ * WebDriver round trips.
+ */
+public final class ElementSnapshot {
+  /** What to capture for each element. Applies to the matched elements and everything below. */
+  public static final class Spec {
+    List<String> attributes = ImmutableList.of();
+    List<String> cssProperties = ImmutableList.of();
+    int childDepth = 0;
+    boolean innerHtml = false;
+    @Nullable String descendantSelector = null;
+
+    public Spec attributes(String... names) {
+      attributes = ImmutableList.copyOf(names);
+      return this;
+    }
+
+    /** Computed style properties, e.g. {@code font-weight}. */
+    public Spec cssProperties(String... names) {
+      cssProperties = ImmutableList.copyOf(names);
+      return this;
+    }
+
+    /** How many levels of element children to capture below each snapshotted element. */
+    public Spec childDepth(int depth) {
+      childDepth = depth;
+      return this;
+    }
+
+    /** Captures innerHTML of the matched (top-level) elements. */
+    public Spec innerHtml() {
+      innerHtml = true;
+      return this;
+    }
+
+    /**
+     * Also captures descendants of each matched element that match {@code selector}, available
+     * through {@link #getDescendants()}.
+     */
+    public Spec descendants(String selector) {
+      descendantSelector = selector;
+      return this;
+    }
+  }
+
+  static final String EXTRACT_SCRIPT =
+      "var selector = arguments[0], attrs = arguments[1], props = arguments[2]," +
+      "    depth = arguments[3], withHtml = arguments[4], descendantSelector = arguments[5];" +
+      "function snap(el, d) {" +
+      "  var out = {tag: el.tagName.toLowerCase(), text: (el.innerText || '').trim()," +
+      "      classes: Array.from(el.classList), attrs: {}, css: {}, children: []};" +
+      "  attrs.forEach(function(a) { out.attrs[a] = el.getAttribute(a); });" +
+      "  if (props.length) {" +
+      "    var style = window.getComputedStyle(el);" +
+      "    props.forEach(function(p) { out.css[p] = style.getPropertyValue(p); });" +
+      "  }" +
+      "  if (d > 0) {" +
+      "    Array.from(el.children).forEach(function(c) { out.children.push(snap(c, d - 1)); });" +
+      "  }" +
+      "  return out;" +
+      "}" +
+      "return Array.from(document.querySelectorAll(selector)).map(function(el) {" +
+      "  var out = snap(el, depth);" +
+      "  if (withHtml) { out.html = el.innerHTML; }" +
+      "  if (descendantSelector) {" +
+      "    out.descendants = Array.from(el.querySelectorAll(descendantSelector))" +
+      "        .map(function(c) { return snap(c, depth); });" +
+      "  }" +
+      "  return out;" +
+      "});";
+
+  private final String tag;
+  private final String text;
+  private final List<String> classes;
+  private final Map<String, String> attributes;
+  private final Map<String, String> cssProperties;
+  private final List<ElementSnapshot> children;
+  private final List<ElementSnapshot> descendants;
+  private final @Nullable String innerHtml;
+
+  public ElementSnapshot(String tag, String text, List<String> classes,
+      Map<String, String> attributes, Map<String, String> cssProperties,
+      List<ElementSnapshot> children, List<ElementSnapshot> descendants,
+      @Nullable String innerHtml) {
+    this.tag = tag;
+    this.text = text;
+    this.classes = ImmutableList.copyOf(classes);
+    this.attributes = ImmutableMap.copyOf(attributes);
+    this.cssProperties = ImmutableMap.copyOf(cssProperties);
+    this.children = ImmutableList.copyOf(children);
+    this.descendants = ImmutableList.copyOf(descendants);
+    this.innerHtml = innerHtml;
+  }
+
+  /** Converts the (JSON-like) value returned by {@link #EXTRACT_SCRIPT}. */
+  @SuppressWarnings("unchecked")
+  static ElementSnapshot fromScriptResult(Map<String, Object> raw) {
+    ImmutableMap.Builder<String, String> attributes = ImmutableMap.builder();
+    ((Map<String, Object>) raw.get("attrs")).forEach((k, v) -> {
+      if (v != null) { attributes.put(k, v.toString()); }
+    });
+    ImmutableMap.Builder<String, String> css = ImmutableMap.builder();
+    ((Map<String, Object>) raw.get("css")).forEach((k, v) -> {
+      if (v != null) { css.put(k, v.toString()); }
+    });
+
+    return new ElementSnapshot(
+        (String) raw.get("tag"),
+        (String) raw.get("text"),
+        (List<String>) raw.get("classes"),
+        attributes.build(),
+        css.build(),
+        fromScriptResults((List<Object>) raw.get("children")),
+        fromScriptResults((List<Object>) raw.getOrDefault("descendants", ImmutableList.of())),
+        (String) raw.get("html"));
+  }
+
+  @SuppressWarnings("unchecked")
+  static List<ElementSnapshot> fromScriptResults(@Nullable List<Object> raw) {
+    if (raw == null) { return ImmutableList.of(); }
+
+    ImmutableList.Builder<ElementSnapshot> snapshots = ImmutableList.builder();
+    for (Object o : raw) {
+      snapshots.add(fromScriptResult((Map<String, Object>) o));
+    }
+    return snapshots.build();
+  }
+
+  public String getTag() { return tag; }
+
+  /** Rendered text, comparable to {@link org.openqa.selenium.WebElement#getText()}. */
+  public String getText() { return text; }
+
+  public List<String> getClasses() { return classes; }
+
+  public boolean hasClass(String className) { return classes.contains(className); }
+
+  /** Only attributes requested through {@link Spec#attributes} are available. */
+  public Optional<String> getAttribute(String name) {
+    return Optional.ofNullable(attributes.get(name));
+  }
+
+  /** Only properties requested through {@link Spec#cssProperties} are available. */
+  public Optional<String> getCssValue(String property) {
+    return Optional.ofNullable(cssProperties.get(property));
+  }
+
+  public List<ElementSnapshot> getChildren() { return children; }
+
+  public Optional<ElementSnapshot> firstChild(String tag) {
+    return children.stream().filter(c -> c.tag.equals(tag)).findFirst();
+  }
+
+  public boolean hasChild(String tag) {
+    return firstChild(tag).isPresent();
+  }
+
+  public List<ElementSnapshot> getDescendants() { return descendants; }
+
+  /** Only available when requested through {@link Spec#innerHtml()}. */
+  public Optional<String> getInnerHtml() { return Optional.ofNullable(innerHtml); }
+}
@@ -1,6 +1,8 @@
 package dong.anqi.grocery;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 public interface GrocerySlotChecker extends AutoCloseable {
@@ -14,6 +16,11 @@ public interface GrocerySlotChecker extends AutoCloseable {
     public boolean isEdgeTransition = false;
     public Optional<Duration> timeSinceTransition = Optional.empty();
 
+    /** How many slots the site offered, if it says; zero when none were found. */
+    public Optional<Integer> slotCount = Optional.empty();
+    /** The earliest slot or delivery window offered, as the site describes it. */
+    public Optional<String> earliestWindow = Optional.empty();
+
     public Optional<String> notificationMessage = Optional.empty();
   }
 
@@ -24,5 +31,14 @@ public interface GrocerySlotChecker extends AutoCloseable {
    */
   Optional<Status> doCheck();
 
+  /**
+   * Called from another thread when the check in progress has run past its deadline. Should make
+   * {@link #doCheck()} return promptly, e.g. by closing whatever it's blocked on.
+   */
+  default void abortCheck() {}
+
   default Duration getPreferredCheckFrequency() { return Duration.ofMinutes(4); }
+
+  /** Past times at which slots appeared, for pacing checks around them. */
+  default List<Instant> getSlotOpenings() { return List.of(); }
 }
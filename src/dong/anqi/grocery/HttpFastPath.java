@@ -0,0 +1,152 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableList;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Checks a site by fetching one of its endpoints directly, using cookies borrowed from the last
+ * browser session, instead of rendering pages in a browser.
+ * <p>
+ * Only definite answers are returned. Anything unexpected (expired session, unknown response
+ * shape) is reported as {@link UnavailableException}, and the caller is expected to fall back to
+ * a full browser check, which also refreshes the borrowed cookies.
+ */
+class HttpFastPath {
+  /** Site-specific half of the fast path: what to fetch, and how to read it. */
+  interface Probe {
+    String url();
+
+    /** @throws UnavailableException If the body isn't in the expected shape. */
+    Observation parse(String body) throws UnavailableException;
+  }
+
+  static final class Observation {
+    final StatusTracker.State state;
+    final Optional<String> message;
+    final Optional<Integer> slotCount;
+    final Optional<String> earliestWindow;
+
+    Observation(StatusTracker.State state, Optional<String> message) {
+      this(state, message, Optional.empty(), Optional.empty());
+    }
+
+    Observation(StatusTracker.State state, Optional<String> message, Optional<Integer> slotCount,
+        Optional<String> earliestWindow) {
+      this.state = state;
+      this.message = message;
+      this.slotCount = slotCount;
+      this.earliestWindow = earliestWindow;
+    }
+  }
+
+  static class UnavailableException extends Exception {
+    UnavailableException(String reason) {
+      super(reason);
+    }
+  }
+
+  // Redirects are never followed; they almost always mean the session has expired.
+  private static final HttpClient client = HttpClient.newBuilder()
+      .followRedirects(HttpClient.Redirect.NEVER)
+      .connectTimeout(Duration.ofSeconds(10))
+      .build();
+
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+
+  private final Probe probe;
+  /** Bounds the whole exchange, body included; the request's own timeout stops at the headers. */
+  private final Duration timeout;
+
+  private volatile List<Cookie> cookies = ImmutableList.of();
+  private volatile Optional<String> userAgent = Optional.empty();
+
+  /** @param checkDeadline A poll never takes longer than this, nor than 15 seconds. */
+  HttpFastPath(Probe probe, Duration checkDeadline) {
+    this.probe = probe;
+    this.timeout = checkDeadline.compareTo(REQUEST_TIMEOUT) < 0 ? checkDeadline : REQUEST_TIMEOUT;
+  }
+
+  /** Borrows cookies for the current page's site from a browser that has just checked it. */
+  void captureSession(RemoteWebDriver driver) {
+    cookies = ImmutableList.copyOf(driver.manage().getCookies());
+    Object ua = driver.executeScript("return navigator.userAgent;");
+    userAgent = ua instanceof String ? Optional.of((String) ua) : Optional.empty();
+  }
+
+  boolean hasSession() {
+    return !cookies.isEmpty();
+  }
+
+  void invalidateSession() {
+    cookies = ImmutableList.of();
+  }
+
+  private static boolean domainMatches(String host, Cookie cookie) {
+    if (cookie.getDomain() == null) { return true; }  // host-only cookie from this host
+    String domain = cookie.getDomain().startsWith(".") ?
+        cookie.getDomain().substring(1) : cookie.getDomain();
+    return host.equals(domain) || host.endsWith("." + domain);
+  }
+
+  private String cookieHeader(String host) {
+    Date now = new Date();
+    return cookies.stream()
+        .filter(c -> c.getExpiry() == null || c.getExpiry().after(now))
+        .filter(c -> domainMatches(host, c))
+        .map(c -> c.getName() + "=" + c.getValue())
+        .collect(Collectors.joining("; "));
+  }
+
+  Observation poll() throws UnavailableException, InterruptedException {
+    if (!hasSession()) {
+      throw new UnavailableException("no browser session to borrow");
+    }
+
+    URI uri = URI.create(probe.url());
+    HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+        .timeout(timeout)
+        .header("Accept", "application/json, text/html;q=0.9")
+        .header("Cookie", cookieHeader(uri.getHost()))
+        .GET();
+    userAgent.ifPresent(ua -> request.header("User-Agent", ua));
+
+    HttpResponse<String> response;
+    CompletableFuture<HttpResponse<String>> pending =
+        client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString());
+    try {
+      response = pending.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      throw new UnavailableException("request failed: " + e.getCause().getMessage());
+    } catch (TimeoutException e) {
+      throw new UnavailableException("no response within " + timeout.getSeconds() + "s");
+    } finally {
+      pending.cancel(true);
+    }
+
+    int code = response.statusCode();
+    if ((code >= 300 && code < 400) || code == 401 || code == 403) {
+      invalidateSession();
+      throw new UnavailableException("session expired (HTTP " + code + ")");
+    }
+    if (code != 200) {
+      throw new UnavailableException("HTTP " + code);
+    }
+
+    return probe.parse(response.body());
+  }
+}
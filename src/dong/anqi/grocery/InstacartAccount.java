@@ -0,0 +1,18 @@
+package dong.anqi.grocery;
+
+import java.util.Optional;
+
+/**
+ * One Instacart login, and the stores checked through it.
+ * <p>
+ * Every store's delivery info page is on the same site and behind the same login, so checkers on
+ * one account take turns sweeping all of its stores in one browser. Every store a sweep reached
+ * has an entry, empty if its page didn't say either way, so that its checker knows to look for
+ * itself rather than sweep again.
+ */
+public class InstacartAccount
+    extends SweptAccount<InstacartSlotChecker.Store, Optional<HttpFastPath.Observation>> {
+  public InstacartAccount(String name) {
+    super(name, InstacartSlotChecker.Store.class);
+  }
+}
@@ -6,7 +6,11 @@ import org.openqa.selenium.By;
 import org.openqa.selenium.WebElement;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -42,24 +46,38 @@ public final class InstacartSlotChecker extends BaseInstacartSlotChecker {
     }
 
     String homePage() {
-      return String.format("https://www.instacart.com/store/%s/storefront", instacartUrlPath);
+      return String.format("%s/store/%s/storefront", ORIGIN, instacartUrlPath);
     }
 
-    By deliveryButtonQuery() {
-      return By.cssSelector(String.format("a[href~=\"/%s/info?tab=delivery\"]", instacartUrlPath));
+    String deliveryButtonSelector() {
+      return String.format("a[href~=\"/%s/info?tab=delivery\"]", instacartUrlPath);
     }
 
     String deliveryInfoPage() {
-      return String.format(
-          "https://www.instacart.com/store/%s/info?tab=delivery", instacartUrlPath);
+      return String.format("%s/store/%s/info?tab=delivery", ORIGIN, instacartUrlPath);
+    }
+
+    String deliveryContentEndpoint() {
+      return String.format("%s/v3/containers/%s/next_gen/" +
+          "retailer_information/content/delivery?source=web", ORIGIN, instacartUrlPath);
     }
   }
 
-  private final Store store;
+  private static final String ORIGIN = SiteUrls.resolve("https://www.instacart.com");
 
-  public InstacartSlotChecker(Store store, Logger logger) {
-    super("Instacart " + store.displayName(), logger);
+  private final Store store;
+  private final InstacartAccount account;
+
+  /**
+   * @param account Login to check {@code store} through. Checkers on the same account share
+   *                sweeps over its stores; see {@link InstacartAccount}.
+   */
+  public InstacartSlotChecker(Store store, InstacartAccount account, CheckerContext context) {
+    super("Instacart " + store.displayName(), "Instacart " + account.getName(),
+        ImmutableSet.of(ORIGIN), context);
     this.store = store;
+    this.account = account;
+    account.addStore(store);
   }
 
   @Override
@@ -73,8 +91,8 @@ public final class InstacartSlotChecker extends BaseInstacartSlotChecker {
   }
 
   @Override
-  protected @NotNull By getDeliveryTimeButtonQuery() {
-    return store.deliveryButtonQuery();
+  protected @NotNull String getDeliveryTimeButtonSelector() {
+    return store.deliveryButtonSelector();
   }
 
   @Override
@@ -82,39 +100,118 @@ public final class InstacartSlotChecker extends BaseInstacartSlotChecker {
     return store.deliveryInfoPage();
   }
 
-  private static final String CREDS_PATH = "creds/instacart.creds";
-  private static final String LOGIN_START_PAGE = "https://www.instacart.com/";
+  @Override
+  protected Optional<String> getDeliveryContentEndpoint() {
+    return Optional.of(store.deliveryContentEndpoint());
+  }
+
+  private static final String LOGIN_START_PAGE = ORIGIN + "/";
+
+  private static final Duration LOGIN_DEADLINE = Duration.ofSeconds(15);
+
+  private List<WebElement> findLoginButtons() {
+    return driver.findElements(By.tagName("button")).stream()
+        .filter(el -> getInnerHtml(el).equals("Log in"))
+        .collect(Collectors.toUnmodifiableList());
+  }
 
   @Override
-  protected void executeLogin() {
-    driver.get(LOGIN_START_PAGE);
+  protected boolean executeLogin() {
+    loadPage(LOGIN_START_PAGE);
     if (!driver.getCurrentUrl().equals(LOGIN_START_PAGE)) {
       log(String.format("URL navigated to %s, already logged in?", driver.getCurrentUrl()));
+      return true;
     } else {
-      Utils.startInterruptibleSleep(Duration.ofSeconds(5));
+      awaitReady("login button", LOGIN_DEADLINE, PageReadiness.allOf(
+          PageReadiness.documentComplete(),
+          d -> !findLoginButtons().isEmpty()));
 
-      List<WebElement> loginButtons = driver.findElements(By.tagName("button")).stream()
-          .filter(el -> getInnerHtml(el).equals("Log in"))
-          .collect(Collectors.toUnmodifiableList());
+      List<WebElement> loginButtons = findLoginButtons();
       if (loginButtons.isEmpty()) {
         logErr("No log in button found; giving up");
-        return;
+        return false;
       } else if (loginButtons.size() != 1) {
         logErr("Multiple log in buttons found, randomly choosing one");
       }
       loginButtons.get(0).click();
 
-      Utils.startInterruptibleSleep(Duration.ofMillis(500));
-      Utils.Credentials creds = Utils.readCredentials(CREDS_PATH);
+      By passField = By.id("nextgen-authenticate.all.log_in_password");
+      awaitReady("login form", LOGIN_DEADLINE, PageReadiness.elementPresent(passField));
+      Utils.Credentials creds = Utils.readCredentials(account.getCredsPath());
 
-      WebElement passField = driver.findElement(By.id("nextgen-authenticate.all.log_in_password"));
-      driver.findElement(By.id("nextgen-authenticate.all.log_in_email")).sendKeys(creds.user);
-      passField.sendKeys(creds.pass);
-      passField.sendKeys("\n");
+      fillField(By.id("nextgen-authenticate.all.log_in_email"), creds.user);
+      fillField(passField, creds.pass);
+      submitForm(passField);
 
-      Utils.startInterruptibleSleep(Duration.ofSeconds(6));
+      boolean submitted = awaitReady("login submit", LOGIN_DEADLINE, PageReadiness.allOf(
+          PageReadiness.elementAbsent(passField),
+          PageReadiness.settled()));
 
       log(String.format("URL %s after login attempt", driver.getCurrentUrl()));
+      return submitted;
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Reads the account's stores' delivery info pages in turn, in the one browser, starting with
+   * this checker's own store and going round from there, for as long as {@link #hasTimeToSweep()};
+   * what's left of the deadline is for this checker's own fallback to the home page. Stores it
+   * didn't reach are left out, so that their checkers sweep next, starting from themselves. Every
+   * store reached gets an entry, empty if its page couldn't be read.
+   */
+  private Map<Store, Optional<HttpFastPath.Observation>> sweepStores() {
+    List<Store> stores = new ArrayList<>(account.getStores());
+    Collections.rotate(stores, -stores.indexOf(store));
+
+    Map<Store, Optional<HttpFastPath.Observation>> deliveryInfo = new EnumMap<>(Store.class);
+    for (Store s : stores) {
+      if (!deliveryInfo.isEmpty() && !hasTimeToSweep()) { break; }
+      deliveryInfo.put(s, observeDeliveryInfoPage(s.deliveryInfoPage()));
+    }
+
+    log(String.format("Swept %d of %d stores on account %s, %d conclusively",
+        deliveryInfo.size(), stores.size(), account.getName(),
+        deliveryInfo.values().stream().filter(Optional::isPresent).count()));
+    return deliveryInfo;
+  }
+
+  private Status reportFromSweep(HttpFastPath.Observation observation) {
+    log(observation.message.orElse("no slots") + " (" + account.getName() + "'s last sweep)");
+    return applyObservation(observation);
+  }
+
+  /**
+   * Takes this store's observation from the account's last sweep if it's fresh, or else tries the
+   * fast path, and only then sweeps the account; see {@link #checkBySweep}. A store the last sweep
+   * couldn't read is checked on its own.
+   */
+  @Override
+  protected Optional<Status> check() {
+    Optional<Optional<HttpFastPath.Observation>> swept = takeFreshSweep(account, store);
+    if (swept.isPresent() && swept.get().isPresent()) {
+      return Optional.of(reportFromSweep(swept.get().get()));
+    }
+
+    Optional<Status> fastStatus = tryFastPath();
+    if (fastStatus.isPresent()) {
+      return fastStatus;
+    }
+
+    if (swept.isEmpty() && account.getStores().size() > 1) {
+      return checkBySweep(account, store, observation -> observation.isPresent() ?
+          Optional.of(reportFromSweep(observation.get())) : checkWithBrowser());
+    }
+    return checkWithBrowser();
+  }
+
+  @Override
+  protected Optional<HttpFastPath.Observation> observeDeliveryInfo() {
+    if (!isSweeping()) {
+      return super.observeDeliveryInfo();
+    }
+
+    Map<Store, Optional<HttpFastPath.Observation>> swept = sweepStores();
+    recordSweep(swept);
+    return swept.getOrDefault(store, Optional.empty());
+  }
+}
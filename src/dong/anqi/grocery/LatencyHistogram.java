@@ -0,0 +1,80 @@
+package dong.anqi.grocery;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with log-linear buckets, in the style of HdrHistogram. Values are kept in
+ * microseconds: below 128 each gets a bucket, and every power of two above that is split into 64
+ * buckets, so any recorded value is known to within 1.6%. Values top out at about 71 minutes;
+ * longer ones are counted as that.
+ * <p>
+ * Recording is lock-free and safe from any thread. Reads don't stop writers, so a read racing a
+ * write may see it in some totals and not others, which is fine for monitoring.
+ */
+class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+  private static final long MAX_MICROS = (1L << 32) - 1;
+
+  private static final int BUCKET_COUNT = bucketIndex(MAX_MICROS) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  static int bucketIndex(long micros) {
+    if (micros < SUB_BUCKET_COUNT) { return (int) micros; }
+
+    // Shift that brings the value into [SUB_BUCKET_HALF, SUB_BUCKET_COUNT)
+    int shift = 63 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS - 1);
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF +
+        (int) (micros >> shift) - SUB_BUCKET_HALF;
+  }
+
+  /** Largest value that lands in bucket {@code index}. */
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKET_COUNT) { return index; }
+
+    int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+    long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  public void record(Duration latency) {
+    long micros = Math.min(Math.max(latency.toNanos() / 1000, 0), MAX_MICROS);
+    counts.incrementAndGet(bucketIndex(micros));
+    count.incrementAndGet();
+    totalMicros.addAndGet(micros);
+    maxMicros.accumulateAndGet(micros, Math::max);
+  }
+
+  public long getCount() { return count.get(); }
+
+  public Duration getMax() { return Duration.ofNanos(maxMicros.get() * 1000); }
+
+  public Duration getTotal() { return Duration.ofNanos(totalMicros.get() * 1000); }
+
+  /**
+   * @param quantile Between 0 and 1, e.g. 0.99.
+   * @return The latency that {@code quantile} of recorded values are at or below, rounded up to
+   *     the end of its bucket; zero if nothing was recorded.
+   */
+  public Duration getQuantile(double quantile) {
+    long n = count.get();
+    if (n == 0) { return Duration.ZERO; }
+
+    long rank = Math.max(1, (long) Math.ceil(quantile * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Duration.ofNanos(Math.min(bucketUpperBound(i), maxMicros.get()) * 1000);
+      }
+    }
+    return getMax();
+  }
+}
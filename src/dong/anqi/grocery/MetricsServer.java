@@ -0,0 +1,58 @@
+package dong.anqi.grocery;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link CheckMetrics#render()} at {@code http://localhost:<port>/metrics}, for curl or a
+ * Prometheus scraper. Only listens on the loopback interface.
+ */
+public class MetricsServer implements AutoCloseable {
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  public MetricsServer(CheckMetrics metrics, int port) throws IOException {
+    if (metrics == null) { throw new NullPointerException(); }
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 8);
+    executor = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "metrics-server");
+      t.setDaemon(true);
+      return t;
+    });
+    server.createContext("/metrics", exchange -> respond(exchange, metrics.render()));
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  public int getPort() { return server.getAddress().getPort(); }
+
+  private static void respond(HttpExchange exchange, String body) {
+    try {
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
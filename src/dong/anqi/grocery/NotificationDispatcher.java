@@ -0,0 +1,200 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Delivers notifications on background threads, so that checker threads only pay for putting a
+ * message on a queue. Each delivery is bounded by its channel's timeout, and spawned processes
+ * are waited for (and killed if need be) rather than left behind.
+ */
+public class NotificationDispatcher implements AutoCloseable {
+  public static final class Notification {
+    public final String title;
+    public final String body;
+
+    public Notification(String title, String body) {
+      this.title = title;
+      this.body = body;
+    }
+  }
+
+  public interface Channel {
+    String getName();
+
+    /** Longest a single delivery may take before it is abandoned. */
+    Duration getTimeout();
+
+    void deliver(Notification notification) throws Exception;
+  }
+
+  private static class QueuedNotification {
+    final Channel channel;
+    final Notification notification;
+
+    QueuedNotification(Channel channel, Notification notification) {
+      this.channel = channel;
+      this.notification = notification;
+    }
+  }
+
+  private final BlockingQueue<QueuedNotification> queue;
+  private final ExecutorService workers;
+  /** Runs the deliveries themselves, so that workers can time them out. */
+  private final ExecutorService deliveryExecutor;
+  private final CheckMetrics metrics;
+  private final Logger logger;
+
+  private volatile boolean closed = false;
+
+  public NotificationDispatcher(int queueCapacity, int workerCount, Logger logger) {
+    this(queueCapacity, workerCount, new CheckMetrics(), logger);
+  }
+
+  /**
+   * @param metrics Where delivery times are recorded, under the notification's title (normally the
+   *                checker's description).
+   */
+  public NotificationDispatcher(
+      int queueCapacity, int workerCount, CheckMetrics metrics, Logger logger) {
+    if (metrics == null || logger == null) { throw new NullPointerException(); }
+
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.metrics = metrics;
+    this.logger = logger;
+    this.workers = Executors.newFixedThreadPool(workerCount, daemonThreads("notifier"));
+    this.deliveryExecutor = Executors.newCachedThreadPool(daemonThreads("notifier-delivery"));
+
+    for (int i = 0; i < workerCount; i++) {
+      workers.execute(this::runWorker);
+    }
+  }
+
+  private static ThreadFactory daemonThreads(String prefix) {
+    AtomicInteger count = new AtomicInteger();
+    return r -> {
+      Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+  /**
+   * Queues a notification without blocking.
+   *
+   * @return False if the queue was full (or the dispatcher closed), and the notification dropped.
+   */
+  public boolean submit(Channel channel, String title, String body) {
+    if (closed) { return false; }
+
+    boolean queued = queue.offer(new QueuedNotification(channel, new Notification(title, body)));
+    if (!queued) {
+      logger.logErr(String.format("%s Notification queue full, dropped %s notification: %s",
+          Utils.nowString(), channel.getName(), title));
+    }
+    return queued;
+  }
+
+  private void runWorker() {
+    while (!Thread.currentThread().isInterrupted()) {
+      QueuedNotification queued;
+      try {
+        queued = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      deliver(queued);
+    }
+  }
+
+  private void deliver(QueuedNotification queued) {
+    Channel channel = queued.channel;
+    Future<?> delivery = deliveryExecutor.submit(() -> {
+      try (CheckMetrics.Span span =
+          metrics.time(queued.notification.title, CheckMetrics.Phase.NOTIFICATION)) {
+        channel.deliver(queued.notification);
+      }
+      return null;
+    });
+
+    try {
+      delivery.get(channel.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      delivery.cancel(true);
+      logger.logErr(String.format("%s %s notification timed out after %ds",
+          Utils.nowString(), channel.getName(), channel.getTimeout().getSeconds()));
+    } catch (ExecutionException e) {
+      logger.logErr(String.format("%s %s notification failed: %s",
+          Utils.nowString(), channel.getName(), e.getCause()));
+    } catch (InterruptedException e) {
+      delivery.cancel(true);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * A channel that runs a command per notification, waits for it to exit, and kills it if it
+   * outlives the timeout.
+   */
+  public static Channel commandChannel(
+      String name, Duration timeout, Function<Notification, List<String>> command) {
+    return new Channel() {
+      @Override
+      public String getName() { return name; }
+
+      @Override
+      public Duration getTimeout() { return timeout; }
+
+      @Override
+      public void deliver(Notification notification) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command.apply(notification))
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        try {
+          if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new IOException(name + " did not exit in time");
+          }
+          if (process.exitValue() != 0) {
+            throw new IOException(name + " exited with " + process.exitValue());
+          }
+        } finally {
+          if (process.isAlive()) {
+            process.destroyForcibly().waitFor(1, TimeUnit.SECONDS);
+          }
+        }
+      }
+    };
+  }
+
+  public static Channel desktopChannel() {
+    return commandChannel("notify-send", Duration.ofSeconds(10), n ->
+        ImmutableList.of("/usr/bin/notify-send", "-t", "30000", n.title, n.body));
+  }
+
+  public static Channel speechChannel() {
+    return commandChannel("espeak", Duration.ofSeconds(60), n ->
+        ImmutableList.of("/usr/bin/espeak", n.title + n.body));
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    workers.shutdownNow();
+    deliveryExecutor.shutdownNow();
+  }
+}
@@ -0,0 +1,419 @@
+package dong.anqi.grocery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk record of every check's outcome, for questions like "how often did H Mart have slots
+ * between 6 and 8am last month".
+ * <p>
+ * Observations are partitioned by local date, one segment file per day. Within a segment, each
+ * field is stored as its own column (times as offsets from midnight, checkers and windows as
+ * indexes into per-segment dictionaries), and the segment is gzipped, so a day of checks takes a
+ * few kilobytes. Queries only read the segments for the days they cover.
+ * <p>
+ * Today's segment is kept in memory and rewritten every {@link #FLUSH_EVERY} observations (or
+ * {@link #FLUSH_INTERVAL}), so a crash loses at most that much.
+ */
+public class ObservationStore implements AutoCloseable {
+  public enum Outcome { HAS_SLOT, NO_SLOT, FAILED }
+
+  private static final int MAGIC = 0x674f6231;  // "gOb1"
+  private static final DateTimeFormatter SEGMENT_DATE_FORMAT =
+      DateTimeFormatter.ofPattern("yyyyMMdd");
+
+  private static final int FLUSH_EVERY = 20;
+  private static final Duration FLUSH_INTERVAL = Duration.ofMinutes(10);
+
+  /** One day of observations, column by column. */
+  private static final class Segment {
+    final LocalDate date;
+    final Instant start;
+
+    int rows = 0;
+    int[] offsetMillis = new int[64];
+    byte[] checkers = new byte[64];
+    byte[] outcomes = new byte[64];
+    short[] slotCounts = new short[64];  // -1 if unknown
+    int[] windows = new int[64];  // -1 if unknown
+
+    final List<String> checkerNames = new ArrayList<>();
+    final List<String> windowNames = new ArrayList<>();
+    private final Map<String, Integer> checkerIds = new HashMap<>();
+    private final Map<String, Integer> windowIds = new HashMap<>();
+
+    Segment(LocalDate date, ZoneId zone) {
+      this.date = date;
+      this.start = date.atStartOfDay(zone).toInstant();
+    }
+
+    private static int intern(String s, List<String> names, Map<String, Integer> ids) {
+      return ids.computeIfAbsent(s, k -> {
+        names.add(k);
+        return names.size() - 1;
+      });
+    }
+
+    void add(String checker, Instant time, Outcome outcome, Optional<Integer> slotCount,
+        Optional<String> earliestWindow) {
+      if (rows == offsetMillis.length) {
+        int capacity = Math.max(64, rows * 2);
+        offsetMillis = Arrays.copyOf(offsetMillis, capacity);
+        checkers = Arrays.copyOf(checkers, capacity);
+        outcomes = Arrays.copyOf(outcomes, capacity);
+        slotCounts = Arrays.copyOf(slotCounts, capacity);
+        windows = Arrays.copyOf(windows, capacity);
+      }
+
+      int checkerId = intern(checker, checkerNames, checkerIds);
+      if (checkerId > Byte.MAX_VALUE) {
+        throw new IllegalStateException("Too many checkers for one segment");
+      }
+
+      offsetMillis[rows] = (int) Duration.between(start, time).toMillis();
+      checkers[rows] = (byte) checkerId;
+      outcomes[rows] = (byte) outcome.ordinal();
+      slotCounts[rows] =
+          slotCount.map(c -> (short) Math.min(c, Short.MAX_VALUE)).orElse((short) -1);
+      windows[rows] = earliestWindow.map(w -> intern(w, windowNames, windowIds)).orElse(-1);
+      rows++;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeLong(date.toEpochDay());
+      out.writeInt(rows);
+      writeDictionary(out, checkerNames);
+      writeDictionary(out, windowNames);
+
+      for (int i = 0; i < rows; i++) { out.writeInt(offsetMillis[i]); }
+      out.write(checkers, 0, rows);
+      out.write(outcomes, 0, rows);
+      for (int i = 0; i < rows; i++) { out.writeShort(slotCounts[i]); }
+      for (int i = 0; i < rows; i++) { out.writeInt(windows[i]); }
+    }
+
+    static Segment read(DataInputStream in, ZoneId zone) throws IOException {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not an observation segment");
+      }
+      Segment segment = new Segment(LocalDate.ofEpochDay(in.readLong()), zone);
+      int rows = in.readInt();
+      readDictionary(in, segment.checkerNames, segment.checkerIds);
+      readDictionary(in, segment.windowNames, segment.windowIds);
+
+      segment.rows = rows;
+      segment.offsetMillis = new int[rows];
+      segment.checkers = new byte[rows];
+      segment.outcomes = new byte[rows];
+      segment.slotCounts = new short[rows];
+      segment.windows = new int[rows];
+      for (int i = 0; i < rows; i++) { segment.offsetMillis[i] = in.readInt(); }
+      in.readFully(segment.checkers);
+      in.readFully(segment.outcomes);
+      for (int i = 0; i < rows; i++) { segment.slotCounts[i] = in.readShort(); }
+      for (int i = 0; i < rows; i++) { segment.windows[i] = in.readInt(); }
+      return segment;
+    }
+
+    private static void writeDictionary(DataOutputStream out, List<String> names)
+        throws IOException {
+      out.writeInt(names.size());
+      for (String name : names) { out.writeUTF(name); }
+    }
+
+    private static void readDictionary(
+        DataInputStream in, List<String> names, Map<String, Integer> ids) throws IOException {
+      int size = in.readInt();
+      for (int i = 0; i < size; i++) {
+        String name = in.readUTF();
+        names.add(name);
+        ids.put(name, i);
+      }
+    }
+  }
+
+  /** Aggregate over the observations matching a {@link Query}. */
+  public static final class Summary {
+    public int checks = 0;
+    public int withSlots = 0;
+    public int withoutSlots = 0;
+    public int failures = 0;
+    public Optional<Integer> maxSlotCount = Optional.empty();
+    public Optional<Instant> lastSlotSeen = Optional.empty();
+    public Optional<String> lastEarliestWindow = Optional.empty();
+
+    /** Share of successful checks that found slots. */
+    public double slotFraction() {
+      int succeeded = withSlots + withoutSlots;
+      return succeeded == 0 ? 0 : (double) withSlots / succeeded;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d checks, %.1f%% with slots, %d failed%s%s", checks,
+          100 * slotFraction(), failures,
+          maxSlotCount.map(c -> ", max " + c + " slots").orElse(""),
+          lastSlotSeen.map(t -> ", last seen " + t).orElse(""));
+    }
+  }
+
+  /** Filters for {@link Query#summarize()}; everything is included unless narrowed down. */
+  public final class Query {
+    private Optional<String> checker = Optional.empty();
+    private Instant from = Instant.EPOCH;
+    private Instant to = Instant.now();
+    private Optional<LocalTime> startOfDay = Optional.empty();
+    private Optional<LocalTime> endOfDay = Optional.empty();
+
+    private Query() {}
+
+    public Query checker(String description) {
+      this.checker = Optional.of(description);
+      return this;
+    }
+
+    /** Observations from {@code from} (inclusive) until {@code to} (exclusive). */
+    public Query between(Instant from, Instant to) {
+      this.from = from;
+      this.to = to;
+      return this;
+    }
+
+    /** Only observations at a local time of day from {@code start} until {@code end}. */
+    public Query timeOfDay(LocalTime start, LocalTime end) {
+      this.startOfDay = Optional.of(start);
+      this.endOfDay = Optional.of(end);
+      return this;
+    }
+
+    public Summary summarize() throws IOException {
+      Summary summary = new Summary();
+      summarizeByChecker().values().forEach(s -> merge(summary, s));
+      return summary;
+    }
+
+    /** Summaries keyed by checker description. */
+    public Map<String, Summary> summarizeByChecker() throws IOException {
+      Map<String, Summary> summaries = new TreeMap<>();
+      LocalDate lastDate = LocalDate.ofInstant(to, zone);
+      LocalDate date = LocalDate.ofInstant(from, zone);
+      if (from.equals(Instant.EPOCH)) {
+        date = earliestSegmentDate().orElse(lastDate);
+      }
+
+      for (; !date.isAfter(lastDate); date = date.plusDays(1)) {
+        // Hold the lock while scanning, in case this is today's segment
+        synchronized (ObservationStore.this) {
+          Optional<Segment> segment = loadSegment(date);
+          if (segment.isPresent()) {
+            scan(segment.get(), summaries);
+          }
+        }
+      }
+      return summaries;
+    }
+
+    private void scan(Segment segment, Map<String, Summary> summaries) {
+      int checkerFilter = checker.map(segment.checkerNames::indexOf).orElse(-2);
+      if (checkerFilter == -1) { return; }  // checker didn't run that day
+
+      long fromOffset = Duration.between(segment.start, from).toMillis();
+      long toOffset = Duration.between(segment.start, to).toMillis();
+      Outcome[] outcomes = Outcome.values();
+      for (int i = 0; i < segment.rows; i++) {
+        int offset = segment.offsetMillis[i];
+        if (offset < fromOffset || offset >= toOffset) { continue; }
+        if (checkerFilter >= 0 && segment.checkers[i] != checkerFilter) { continue; }
+
+        Instant time = segment.start.plusMillis(offset);
+        if (startOfDay.isPresent()) {
+          LocalTime localTime = LocalTime.ofInstant(time, zone);
+          if (localTime.isBefore(startOfDay.get()) || !localTime.isBefore(endOfDay.get())) {
+            continue;
+          }
+        }
+
+        Summary summary = summaries.computeIfAbsent(
+            segment.checkerNames.get(segment.checkers[i]), k -> new Summary());
+        summary.checks++;
+        switch (outcomes[segment.outcomes[i]]) {
+          case HAS_SLOT:
+            summary.withSlots++;
+            summary.lastSlotSeen = Optional.of(time);
+            if (segment.windows[i] >= 0) {
+              summary.lastEarliestWindow = Optional.of(segment.windowNames.get(segment.windows[i]));
+            }
+            break;
+          case NO_SLOT:
+            summary.withoutSlots++;
+            break;
+          case FAILED:
+            summary.failures++;
+            break;
+        }
+        if (segment.slotCounts[i] >= 0) {
+          int count = segment.slotCounts[i];
+          summary.maxSlotCount = Optional.of(Math.max(count, summary.maxSlotCount.orElse(0)));
+        }
+      }
+    }
+  }
+
+  private static void merge(Summary into, Summary from) {
+    into.checks += from.checks;
+    into.withSlots += from.withSlots;
+    into.withoutSlots += from.withoutSlots;
+    into.failures += from.failures;
+    from.maxSlotCount.ifPresent(c ->
+        into.maxSlotCount = Optional.of(Math.max(c, into.maxSlotCount.orElse(0))));
+    from.lastSlotSeen.ifPresent(t -> {
+      if (into.lastSlotSeen.isEmpty() || t.isAfter(into.lastSlotSeen.get())) {
+        into.lastSlotSeen = Optional.of(t);
+        into.lastEarliestWindow = from.lastEarliestWindow;
+      }
+    });
+  }
+
+  private final Path directory;
+  private final ZoneId zone;
+  private final Logger logger;
+
+  /** The segment rows are being added to; usually today's. Guarded by this. */
+  private Segment current;
+  private int unflushedRows = 0;
+  private Instant lastFlush = Instant.now();
+
+  public ObservationStore(Path directory, Logger logger) throws IOException {
+    if (logger == null) { throw new NullPointerException(); }
+
+    this.directory = directory;
+    this.zone = ZoneId.systemDefault();
+    this.logger = logger;
+    Files.createDirectories(directory);
+
+    // Pick up where an earlier run today left off
+    this.current = openSegment(LocalDate.now(zone));
+  }
+
+  /**
+   * {@code date}'s segment as last written, so that rows added to it are written along with the
+   * ones already there; a new segment if there is none.
+   */
+  private Segment openSegment(LocalDate date) {
+    try {
+      Optional<Segment> existing = readSegment(segmentPath(date));
+      if (existing.isPresent()) {
+        return existing.get();
+      }
+    } catch (IOException e) {
+      logger.logErr(String.format("%s Unreadable observations for %s, starting over: %s",
+          Utils.nowString(), date, e));
+    }
+    return new Segment(date, zone);
+  }
+
+  private Path segmentPath(LocalDate date) {
+    return directory.resolve("observations_" + SEGMENT_DATE_FORMAT.format(date) + ".seg");
+  }
+
+  private Optional<Segment> readSegment(Path path) throws IOException {
+    if (!Files.exists(path)) { return Optional.empty(); }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(Files.newInputStream(path))))) {
+      return Optional.of(Segment.read(in, zone));
+    }
+  }
+
+  private synchronized Optional<Segment> loadSegment(LocalDate date) throws IOException {
+    if (date.equals(current.date)) {
+      return Optional.of(current);
+    }
+    return readSegment(segmentPath(date));
+  }
+
+  private Optional<LocalDate> earliestSegmentDate() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(p -> p.getFileName().toString())
+          .filter(name -> name.matches("observations_\\d{8}\\.seg"))
+          .sorted()
+          .findFirst()
+          .map(name -> LocalDate.parse(name.substring(13, 21), SEGMENT_DATE_FORMAT));
+    }
+  }
+
+  /** Records the result of one check; an empty result is a failed check. */
+  public synchronized void record(
+      String checker, Instant time, Optional<GrocerySlotChecker.Status> result) {
+    LocalDate date = LocalDate.ofInstant(time, zone);
+    if (!date.equals(current.date)) {
+      // Usually midnight, but also a check that finished after a later one had already rolled
+      // over; either way, the day's segment may already have rows on disk
+      flush();
+      current = openSegment(date);
+    }
+
+    Outcome outcome = result.map(s -> s.slotFound ? Outcome.HAS_SLOT : Outcome.NO_SLOT)
+        .orElse(Outcome.FAILED);
+    current.add(checker, time, outcome,
+        result.flatMap(s -> s.slotCount), result.flatMap(s -> s.earliestWindow));
+    unflushedRows++;
+
+    if (unflushedRows >= FLUSH_EVERY ||
+        Duration.between(lastFlush, Instant.now()).compareTo(FLUSH_INTERVAL) >= 0) {
+      flush();
+    }
+  }
+
+  /** Rewrites today's segment, via a temporary file so a crash can't leave it half-written. */
+  private void flush() {
+    if (unflushedRows == 0) { return; }
+
+    Path path = segmentPath(current.date);
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new GZIPOutputStream(Files.newOutputStream(temp))))) {
+        current.write(out);
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      unflushedRows = 0;
+      lastFlush = Instant.now();
+    } catch (IOException e) {
+      logger.logErr(String.format("%s Failed to write observations to %s: %s",
+          Utils.nowString(), path, e));
+    }
+  }
+
+  public Query query() {
+    return new Query();
+  }
+
+  @Override
+  public synchronized void close() {
+    flush();
+  }
+}
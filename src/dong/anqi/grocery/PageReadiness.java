@@ -0,0 +1,136 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableList;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/** Conditions that say when a page is ready to be scraped, used instead of fixed sleeps. */
+public enum PageReadiness {
+  ;
+
+  /**
+   * A check against the current page. Conditions may keep state between polls, so a fresh
+   * instance should be used for each wait.
+   */
+  @FunctionalInterface
+  public interface Condition {
+    boolean isMet(RemoteWebDriver driver);
+  }
+
+  public static Condition documentComplete() {
+    return driver -> "complete".equals(driver.executeScript("return document.readyState;"));
+  }
+
+  public static Condition elementPresent(By query) {
+    return driver -> !driver.findElements(query).isEmpty();
+  }
+
+  public static Condition elementAbsent(By query) {
+    return driver -> driver.findElements(query).isEmpty();
+  }
+
+  public static Condition urlIn(Set<String> urls) {
+    return driver -> urls.contains(driver.getCurrentUrl());
+  }
+
+  public static Condition urlNot(String url) {
+    return driver -> !url.equals(driver.getCurrentUrl());
+  }
+
+  /** Browsers stop recording resources at 250 by default, which busy store pages go past. */
+  private static final int RESOURCE_BUFFER_SIZE = 10000;
+
+  /**
+   * The document has loaded, and no new resources (XHRs, scripts, ...) have started loading for
+   * {@code quietPeriod}.
+   */
+  public static Condition networkIdle(Duration quietPeriod) {
+    return new Condition() {
+      private long lastResourceCount = -1;
+      private Instant lastChange = Instant.now();
+
+      @Override
+      public boolean isMet(RemoteWebDriver driver) {
+        // Otherwise a page past the default buffer size would stop counting, and read as idle
+        Object count = driver.executeScript(
+            "performance.setResourceTimingBufferSize(arguments[0]);" +
+            "return document.readyState === 'complete' ?" +
+            "    performance.getEntriesByType('resource').length : -1;",
+            RESOURCE_BUFFER_SIZE);
+        long resourceCount = count instanceof Number ? ((Number) count).longValue() : -1;
+        if (resourceCount < 0 || resourceCount != lastResourceCount) {
+          lastResourceCount = resourceCount;
+          lastChange = Instant.now();
+          return false;
+        }
+        return Duration.between(lastChange, Instant.now()).compareTo(quietPeriod) >= 0;
+      }
+    };
+  }
+
+  /** Page-load default: the document has loaded and the network has been quiet briefly. */
+  public static Condition settled() {
+    return networkIdle(Duration.ofMillis(500));
+  }
+
+  public static Condition not(Condition condition) {
+    return driver -> !condition.isMet(driver);
+  }
+
+  public static Condition allOf(Condition... conditions) {
+    List<Condition> all = ImmutableList.copyOf(conditions);
+    return driver -> all.stream().allMatch(c -> c.isMet(driver));
+  }
+
+  public static Condition anyOf(Condition... conditions) {
+    List<Condition> all = ImmutableList.copyOf(conditions);
+    return driver -> all.stream().anyMatch(c -> c.isMet(driver));
+  }
+
+  private static final Duration POLL_INTERVAL = Duration.ofMillis(250);
+
+  /**
+   * Polls {@code condition} until it is met or {@code deadline} passes.
+   *
+   * @return Time waited if the condition was met, empty if the deadline passed or the wait was
+   *         interrupted.
+   * @throws NoSuchSessionException If the browser has gone away.
+   */
+  static Optional<Duration> await(
+      RemoteWebDriver driver, Duration deadline, Condition condition) {
+    final Instant start = Instant.now();
+    final Instant end = start.plus(deadline);
+    while (true) {
+      boolean met;
+      try {
+        met = condition.isMet(driver);
+      } catch (NoSuchSessionException e) {
+        // The browser is gone, e.g. crashed or recycled; no amount of polling brings it back
+        throw e;
+      } catch (WebDriverException e) {
+        // Usually the page navigating out from under the query; keep polling
+        met = false;
+      }
+
+      Instant now = Instant.now();
+      if (met) {
+        return Optional.of(Duration.between(start, now));
+      }
+      if (!now.isBefore(end)) {
+        return Optional.empty();
+      }
+      if (!Utils.startInterruptibleSleep(POLL_INTERVAL)) {
+        Thread.currentThread().interrupt();
+        return Optional.empty();
+      }
+    }
+  }
+}
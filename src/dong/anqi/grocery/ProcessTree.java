@@ -0,0 +1,118 @@
+package dong.anqi.grocery;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Finds processes and their memory use through Linux's {@code /proc}. Where there's no
+ * {@code /proc}, nothing is ever found.
+ * <p>
+ * Processes can exit at any point while their files are being read, so anything unreadable is
+ * treated as gone rather than as an error.
+ */
+enum ProcessTree {
+  ;
+
+  private static final Path PROC = Paths.get("/proc");
+
+  /**
+   * The process started with {@code argument} whose parent wasn't, i.e. the root of a tree of
+   * processes that all carry it.
+   */
+  static Optional<Long> findRootWithArgument(String argument) {
+    Map<Long, Long> parents = readParents();
+    Set<Long> matching = new HashSet<>();
+    for (long pid : parents.keySet()) {
+      if (commandLine(pid).contains(argument)) {
+        matching.add(pid);
+      }
+    }
+    return matching.stream().filter(pid -> !matching.contains(parents.get(pid))).findFirst();
+  }
+
+  /** Resident memory of {@code rootPid} and all of its descendants; empty if it has exited. */
+  static Optional<Long> treeRssBytes(long rootPid) {
+    Map<Long, Long> parents = readParents();
+    if (!parents.containsKey(rootPid)) {
+      return Optional.empty();
+    }
+
+    Map<Long, List<Long>> children = new HashMap<>();
+    parents.forEach((pid, parent) ->
+        children.computeIfAbsent(parent, p -> new ArrayList<>()).add(pid));
+
+    long total = 0;
+    Deque<Long> pending = new ArrayDeque<>();
+    pending.add(rootPid);
+    while (!pending.isEmpty()) {
+      long pid = pending.poll();
+      total += rssBytes(pid);
+      pending.addAll(children.getOrDefault(pid, List.of()));
+    }
+    return Optional.of(total);
+  }
+
+  /** Every process's parent, by pid. */
+  private static Map<Long, Long> readParents() {
+    Map<Long, Long> parents = new HashMap<>();
+    try (DirectoryStream<Path> dirs = Files.newDirectoryStream(PROC, "[0-9]*")) {
+      for (Path dir : dirs) {
+        readParent(dir).ifPresent(
+            parent -> parents.put(Long.parseLong(dir.getFileName().toString()), parent));
+      }
+    } catch (IOException e) {
+      // No /proc
+    }
+    return parents;
+  }
+
+  private static Optional<Long> readParent(Path procDir) {
+    try {
+      // "pid (comm) state ppid ...", where comm may contain spaces and parentheses of its own
+      String stat = new String(Files.readAllBytes(procDir.resolve("stat")), StandardCharsets.UTF_8);
+      String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+      return Optional.of(Long.parseLong(fields[1]));
+    } catch (IOException | RuntimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static List<String> commandLine(long pid) {
+    try {
+      byte[] cmdline = Files.readAllBytes(PROC.resolve(Long.toString(pid)).resolve("cmdline"));
+      return Arrays.asList(new String(cmdline, StandardCharsets.UTF_8).split("\0"));
+    } catch (IOException e) {
+      return List.of();
+    }
+  }
+
+  private static long rssBytes(long pid) {
+    try {
+      for (String line :
+          Files.readAllLines(PROC.resolve(Long.toString(pid)).resolve("status"))) {
+        if (line.startsWith("VmRSS:")) {
+          // e.g. "VmRSS:	  123456 kB"
+          return Long.parseLong(line.substring("VmRSS:".length()).replace("kB", "").trim()) *
+              1024;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // Exited
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,55 @@
+package dong.anqi.grocery;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Observed page readiness waits, per site and wait label. Thread-safe. */
+public class ReadinessStats {
+  private static class Entry {
+    long count = 0;
+    long timeouts = 0;
+    long totalMillis = 0;
+    long maxMillis = 0;
+    long lastMillis = 0;
+  }
+
+  /** Keyed by "site: label". */
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private static String key(String site, String label) {
+    return site + ": " + label;
+  }
+
+  public void recordReady(String site, String label, Duration waited) {
+    long millis = waited.toMillis();
+    Entry entry = entries.computeIfAbsent(key(site, label), k -> new Entry());
+    synchronized (entry) {
+      entry.count++;
+      entry.totalMillis += millis;
+      entry.maxMillis = Math.max(entry.maxMillis, millis);
+      entry.lastMillis = millis;
+    }
+  }
+
+  public void recordTimeout(String site, String label) {
+    Entry entry = entries.computeIfAbsent(key(site, label), k -> new Entry());
+    synchronized (entry) {
+      entry.timeouts++;
+    }
+  }
+
+  /** One line per site and wait, e.g. "Weee: home page ready n=12 avg=2310ms max=4100ms". */
+  public String summary() {
+    StringBuilder sb = new StringBuilder();
+    new TreeMap<>(entries).forEach((key, entry) -> {
+      synchronized (entry) {
+        sb.append(String.format("%s n=%d avg=%dms max=%dms last=%dms timeouts=%d\n",
+            key, entry.count, entry.count == 0 ? 0 : entry.totalMillis / entry.count,
+            entry.maxMillis, entry.lastMillis, entry.timeouts));
+      }
+    });
+    return sb.toString();
+  }
+}
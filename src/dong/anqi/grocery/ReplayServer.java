@@ -0,0 +1,331 @@
+package dong.anqi.grocery;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the grocery sites, for running checkers offline: start this, then run
+ * {@link CheckerHostRunner} with {@code -Dgrocery.replay=http://127.0.0.1:8700} (see
+ * {@link SiteUrls}).
+ * <p>
+ * Pages come from {@code replay/<host>/}. Each site has a {@code routes.txt} mapping paths to page
+ * templates (one route per line: path pattern, where {@code *} matches a path segment, then the
+ * file, then {@code login} if the page needs a session), and a {@code site.properties} naming its
+ * session cookie, where logged-out visitors are sent, and where logging in leads. Templates can
+ * use {@code {{1}}} etc. for the segments matched by {@code *}, and
+ * {@code <!--if slots-->...<!--end-->} (or {@code !slots}, {@code session}, {@code !session}) for
+ * content that depends on the site's state. Forms post to {@code /replay/login}, which starts a
+ * session whatever the credentials.
+ * <p>
+ * Configured with system properties:
+ * <ul>
+ *   <li>{@code grocery.replay.port}: base port; sites take consecutive ports from here</li>
+ *   <li>{@code grocery.replay.latencyMillis}, {@code grocery.replay.jitterMillis}: added to every
+ *       response</li>
+ *   <li>{@code grocery.replay.slots}: {@code open}, {@code closed}, or the probability that a
+ *       site has slots, redrawn every {@code grocery.replay.slotEpochSeconds}</li>
+ *   <li>{@code grocery.replay.sessionMinutes}: how long a login lasts</li>
+ *   <li>{@code grocery.replay.logoutRate}: chance that a page needing a session logs you out
+ *       anyway, to exercise re-login</li>
+ *   <li>{@code grocery.replay.seed}: for reproducible runs</li>
+ * </ul>
+ * A site's slots can also be set while running, with {@code /replay/slots?state=open} (or
+ * {@code closed}, or a probability) on that site's port.
+ */
+public class ReplayServer implements AutoCloseable {
+  private static final Pattern CONDITIONAL =
+      Pattern.compile("<!--if (!?)(slots|session)-->(.*?)<!--end-->", Pattern.DOTALL);
+  private static final Pattern CAPTURE = Pattern.compile("\\{\\{(\\d)}}");
+
+  private static final class Route {
+    final Pattern path;
+    final Path file;
+    final boolean needsSession;
+
+    Route(Pattern path, Path file, boolean needsSession) {
+      this.path = path;
+      this.file = file;
+      this.needsSession = needsSession;
+    }
+  }
+
+  /** One replayed site. Slot state is read by request threads and redrawn by the timer. */
+  private final class Site {
+    final String host;
+    final List<Route> routes = new ArrayList<>();
+    final String sessionCookie;
+    final String loginPage;
+    final String loginRedirect;
+
+    volatile double slotProbability;
+    volatile boolean slotsOpen;
+
+    Site(String host, Path directory) throws IOException {
+      this.host = host;
+
+      Properties properties = new Properties();
+      try (InputStream in = Files.newInputStream(directory.resolve("site.properties"))) {
+        properties.load(in);
+      }
+      sessionCookie = properties.getProperty("session.cookie", "replay_session");
+      loginPage = SiteUrls.resolve(properties.getProperty("login.page", "/"));
+      loginRedirect = SiteUrls.resolve(properties.getProperty("login.redirect", "/"));
+
+      for (String line : Files.readAllLines(directory.resolve("routes.txt"))) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) { continue; }
+
+        String[] parts = line.split("\\s+");
+        String regex = Pattern.quote(parts[0]).replace("*", "\\E([^/]+)\\Q");
+        routes.add(new Route(Pattern.compile(regex), directory.resolve(parts[1]).normalize(),
+            parts.length > 2 && parts[2].equals("login")));
+      }
+
+      setSlots(defaultSlots);
+    }
+
+    void setSlots(String state) {
+      if (state.equals("open")) {
+        slotProbability = 1;
+      } else if (state.equals("closed")) {
+        slotProbability = 0;
+      } else {
+        slotProbability = Double.parseDouble(state);
+      }
+      redrawSlots();
+    }
+
+    void redrawSlots() {
+      synchronized (random) {
+        slotsOpen = random.nextDouble() < slotProbability;
+      }
+    }
+  }
+
+  private final Path replayDirectory;
+  private final Duration latency;
+  private final Duration jitter;
+  private final String defaultSlots;
+  private final Duration sessionLength;
+  private final double logoutRate;
+  private final Random random;
+
+  private final List<HttpServer> servers = new ArrayList<>();
+  private final List<Site> sites = new ArrayList<>();
+  private final ExecutorService requestExecutor = Executors.newCachedThreadPool(r -> {
+    Thread t = new Thread(r, "replay-request");
+    t.setDaemon(true);
+    return t;
+  });
+  private final ScheduledExecutorService slotTimer = Executors.newSingleThreadScheduledExecutor();
+
+  public ReplayServer(Path replayDirectory, Duration latency, Duration jitter,
+      String defaultSlots, Duration sessionLength, double logoutRate, long seed) {
+    this.replayDirectory = replayDirectory;
+    this.latency = latency;
+    this.jitter = jitter;
+    this.defaultSlots = defaultSlots;
+    this.sessionLength = sessionLength;
+    this.logoutRate = logoutRate;
+    this.random = new Random(seed);
+  }
+
+  /** Starts one server per site in {@link SiteUrls#SITE_ORIGINS}, from {@code base}'s port up. */
+  public void start(URI base, Duration slotEpoch) throws IOException {
+    for (int i = 0; i < SiteUrls.SITE_ORIGINS.size(); i++) {
+      String host = URI.create(SiteUrls.SITE_ORIGINS.get(i)).getHost();
+      Site site = new Site(host, replayDirectory.resolve(host));
+      sites.add(site);
+
+      HttpServer server = HttpServer.create(
+          new InetSocketAddress(base.getHost(), base.getPort() + i), 64);
+      server.createContext("/", exchange -> handle(site, exchange));
+      server.setExecutor(requestExecutor);
+      server.start();
+      servers.add(server);
+
+      System.out.printf("%s Replaying %s at %s\n", Utils.nowString(), host,
+          SiteUrls.replayOrigin(base, i));
+    }
+
+    slotTimer.scheduleAtFixedRate(() -> sites.forEach(Site::redrawSlots),
+        slotEpoch.toMillis(), slotEpoch.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private void simulateLatency() {
+    long millis;
+    synchronized (random) {
+      millis = latency.toMillis() + (long) ((2 * random.nextDouble() - 1) * jitter.toMillis());
+    }
+    if (millis > 0) {
+      Utils.startInterruptibleSleep(Duration.ofMillis(millis));
+    }
+  }
+
+  private Optional<String> findCookie(HttpExchange exchange, String name) {
+    for (String header : exchange.getRequestHeaders().getOrDefault("Cookie", List.of())) {
+      for (String pair : header.split(";\\s*")) {
+        int equals = pair.indexOf('=');
+        if (equals > 0 && pair.substring(0, equals).equals(name)) {
+          return Optional.of(pair.substring(equals + 1));
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  private boolean hasSession(Site site, HttpExchange exchange) {
+    return findCookie(exchange, site.sessionCookie).map(value -> {
+      try {
+        long age = System.currentTimeMillis() - Long.parseLong(value);
+        return age < sessionLength.toMillis();
+      } catch (NumberFormatException e) {
+        return false;
+      }
+    }).orElse(false);
+  }
+
+  private static void respond(HttpExchange exchange, int status, String contentType, String body)
+      throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+    exchange.getResponseHeaders().set("Cache-Control", "no-store");
+    if (bytes.length == 0) {
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static void redirect(HttpExchange exchange, String location) throws IOException {
+    exchange.getResponseHeaders().set("Location", location);
+    respond(exchange, 302, "text/plain", "");
+  }
+
+  private void handle(Site site, HttpExchange exchange) {
+    try {
+      simulateLatency();
+
+      String path = exchange.getRequestURI().getPath();
+      if (path.equals("/robots.txt")) {
+        respond(exchange, 200, "text/plain", "User-agent: *\nDisallow:\n");
+        return;
+      }
+      if (path.equals("/replay/login")) {
+        exchange.getResponseHeaders().add("Set-Cookie",
+            site.sessionCookie + "=" + System.currentTimeMillis() + "; Path=/");
+        redirect(exchange, site.loginRedirect);
+        return;
+      }
+      if (path.equals("/replay/slots")) {
+        String query = Optional.ofNullable(exchange.getRequestURI().getQuery()).orElse("");
+        site.setSlots(query.replaceFirst("^state=", ""));
+        respond(exchange, 200, "text/plain", site.host + " slots open: " + site.slotsOpen + "\n");
+        return;
+      }
+
+      for (Route route : site.routes) {
+        Matcher match = route.path.matcher(path);
+        if (!match.matches()) { continue; }
+
+        boolean session = hasSession(site, exchange);
+        if (session && route.needsSession) {
+          synchronized (random) {
+            session = random.nextDouble() >= logoutRate;
+          }
+        }
+        if (route.needsSession && !session) {
+          redirect(exchange, site.loginPage);
+          return;
+        }
+
+        String body = render(Files.readString(route.file, StandardCharsets.UTF_8), match,
+            Map.of("slots", site.slotsOpen, "session", session));
+        String contentType = route.file.toString().endsWith(".json") ?
+            "application/json" : "text/html";
+        respond(exchange, 200, contentType, body);
+        return;
+      }
+
+      respond(exchange, 404, "text/plain", "No replay route for " + path + "\n");
+    } catch (IOException | RuntimeException e) {
+      // HttpServer would swallow these silently
+      e.printStackTrace();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  static String render(String template, Matcher captures, Map<String, Boolean> flags) {
+    Matcher conditional = CONDITIONAL.matcher(template);
+    StringBuilder sb = new StringBuilder();
+    while (conditional.find()) {
+      boolean wanted = conditional.group(1).isEmpty();
+      boolean shown = flags.get(conditional.group(2)) == wanted;
+      conditional.appendReplacement(
+          sb, shown ? Matcher.quoteReplacement(conditional.group(3)) : "");
+    }
+    conditional.appendTail(sb);
+
+    Matcher capture = CAPTURE.matcher(sb.toString());
+    StringBuilder result = new StringBuilder();
+    while (capture.find()) {
+      int group = Integer.parseInt(capture.group(1));
+      String value = group <= captures.groupCount() ? captures.group(group) : "";
+      capture.appendReplacement(result, Matcher.quoteReplacement(value));
+    }
+    capture.appendTail(result);
+    return result.toString();
+  }
+
+  @Override
+  public void close() {
+    slotTimer.shutdownNow();
+    servers.forEach(s -> s.stop(0));
+    requestExecutor.shutdownNow();
+  }
+
+  public static void main(String[] args) throws IOException {
+    URI base = URI.create("http://127.0.0.1:" + Integer.getInteger("grocery.replay.port", 8700));
+    // Cross-site redirects (e.g. to Costco's login) go through SiteUrls, which reads this once
+    if (System.getProperty("grocery.replay") == null) {
+      System.setProperty("grocery.replay", base.toString());
+    }
+
+    ReplayServer server = new ReplayServer(
+        Paths.get(System.getProperty("grocery.replay.dir", "replay")),
+        Duration.ofMillis(Long.getLong("grocery.replay.latencyMillis", 200)),
+        Duration.ofMillis(Long.getLong("grocery.replay.jitterMillis", 100)),
+        System.getProperty("grocery.replay.slots", "0.2"),
+        Duration.ofMinutes(Long.getLong("grocery.replay.sessionMinutes", 60)),
+        Double.parseDouble(System.getProperty("grocery.replay.logoutRate", "0")),
+        Long.getLong("grocery.replay.seed", System.nanoTime()));
+    server.start(base, Duration.ofSeconds(Long.getLong("grocery.replay.slotEpochSeconds", 60)));
+  }
+}
@@ -0,0 +1,138 @@
+package dong.anqi.grocery;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Encrypted files holding each checker's {@link BrowserSession}, so that a restart can pick up
+ * the last login instead of logging in again.
+ * <p>
+ * Files are AES-256-GCM encrypted under a key kept in its own file, which is generated on first
+ * use and readable by the owner only. Each file is bound to its checker (the key is the GCM
+ * associated data), so one checker's session can't be passed off as another's. A file that
+ * doesn't decrypt, e.g. because the key was replaced, is treated as missing.
+ */
+class SessionVault {
+  private static final int KEY_BITS = 256;
+  private static final int IV_BYTES = 12;
+  private static final int TAG_BITS = 128;
+
+  private final Path directory;
+  private final SecretKey key;
+  private final SecureRandom random = new SecureRandom();
+
+  private SessionVault(Path directory, SecretKey key) {
+    this.directory = directory;
+    this.key = key;
+  }
+
+  /** Opens the vault in {@code directory}, creating {@code keyFile} if it doesn't exist yet. */
+  static SessionVault open(Path directory, Path keyFile) throws IOException {
+    Files.createDirectories(directory);
+    return new SessionVault(directory, readOrCreateKey(keyFile));
+  }
+
+  private static SecretKey readOrCreateKey(Path keyFile) throws IOException {
+    if (!Files.exists(keyFile)) {
+      byte[] generated;
+      try {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(KEY_BITS);
+        generated = generator.generateKey().getEncoded();
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(e);
+      }
+
+      Path parent = keyFile.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      Path tmp = Files.createTempFile(parent, "session", ".key.tmp");
+      try {
+        Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+      } catch (UnsupportedOperationException e) {
+        // Not a POSIX file system; rely on the directory's permissions
+      }
+      Files.write(tmp, generated);
+      try {
+        // Not replacing: if another runner got there first, its key wins
+        Files.move(tmp, keyFile);
+      } catch (FileAlreadyExistsException e) {
+        Files.delete(tmp);
+      }
+    }
+
+    byte[] encoded = Files.readAllBytes(keyFile);
+    if (encoded.length != KEY_BITS / 8) {
+      throw new IOException(keyFile + " is not a session key");
+    }
+    return new SecretKeySpec(encoded, "AES");
+  }
+
+  private Path file(String sessionKey) {
+    return directory.resolve(sessionKey.replaceAll("[^A-Za-z0-9._-]+", "_") + ".session");
+  }
+
+  private Cipher cipher(int mode, String sessionKey, byte[] iv) throws GeneralSecurityException {
+    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(mode, key, new GCMParameterSpec(TAG_BITS, iv));
+    cipher.updateAAD(sessionKey.getBytes(StandardCharsets.UTF_8));
+    return cipher;
+  }
+
+  /** Replaces {@code sessionKey}'s saved session. The file is swapped in atomically. */
+  void save(String sessionKey, String session) throws IOException {
+    byte[] iv = new byte[IV_BYTES];
+    random.nextBytes(iv);
+
+    byte[] ciphertext;
+    try {
+      ciphertext = cipher(Cipher.ENCRYPT_MODE, sessionKey, iv)
+          .doFinal(session.getBytes(StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+
+    // Checkers sharing a session may save it at the same time, so each save gets its own temp
+    // file; whichever move lands last wins, whole
+    Path file = file(sessionKey);
+    Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      Files.write(tmp, ByteBuffer.allocate(IV_BYTES + ciphertext.length)
+          .put(iv).put(ciphertext).array());
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /** @return The session last saved for {@code sessionKey}; empty if none or undecryptable. */
+  Optional<String> load(String sessionKey) throws IOException {
+    Path file = file(sessionKey);
+    if (!Files.exists(file)) { return Optional.empty(); }
+
+    byte[] contents = Files.readAllBytes(file);
+    if (contents.length < IV_BYTES) { return Optional.empty(); }
+
+    try {
+      byte[] plaintext = cipher(Cipher.DECRYPT_MODE, sessionKey, Arrays.copyOf(contents, IV_BYTES))
+          .doFinal(contents, IV_BYTES, contents.length - IV_BYTES);
+      return Optional.of(new String(plaintext, StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException e) {
+      return Optional.empty();
+    }
+  }
+}
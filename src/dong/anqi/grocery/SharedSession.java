@@ -0,0 +1,93 @@
+package dong.anqi.grocery;
+
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A site login, along with the {@link BrowserSession} holding it, that any number of checkers can
+ * use; e.g. every Instacart store is checked through one Instacart login. Checkers that share a
+ * session share browsers too, since the pool sees them as the same tenant.
+ * <p>
+ * Logging in is done centrally: one checker at a time, and only if nobody has logged in since the
+ * caller's check started. A checker that finds its page logged out while another checker is
+ * already logging in waits for that login and picks up its cookies, rather than starting a login
+ * of its own (which, on sites that allow one session per account, would log the other one out).
+ */
+class SharedSession {
+  /** How {@link #login} went. */
+  enum LoginOutcome {
+    /** The caller logged in. */
+    LOGGED_IN,
+    /** The caller tried to log in, and couldn't. */
+    FAILED,
+    /** Somebody else had logged in already; their login was put into the caller's browser. */
+    REUSED
+  }
+
+  private final String name;
+  private final BrowserSession browserSession;
+
+  private final ReentrantLock loginLock = new ReentrantLock(true);
+  /** Counts logins, so that checkers can tell whether one happened since they last looked. */
+  private volatile long generation = 0;
+  private boolean restoreClaimed = false;
+
+  SharedSession(String name, Collection<String> origins) {
+    this.name = name;
+    this.browserSession = new BrowserSession(origins, () -> generation);
+  }
+
+  /** Identifies the session, e.g. to {@link SessionVault}. */
+  String getName() { return name; }
+
+  BrowserSession getBrowserSession() { return browserSession; }
+
+  long getGeneration() { return generation; }
+
+  /**
+   * Whether the caller should load this session from disk: true for the first caller only, so
+   * that checkers starting later don't replace a live session with the saved one.
+   */
+  synchronized boolean claimRestore() {
+    boolean first = !restoreClaimed;
+    restoreClaimed = true;
+    return first;
+  }
+
+  /**
+   * Logs in by running {@code login} in the leased browser, unless somebody logged in since
+   * {@code sinceGeneration}, in which case their login is put into the browser instead. Either
+   * way, the lease is stamped with the generation the browser then holds. Only a login that
+   * worked is saved and handed on to other checkers.
+   *
+   * @param login Logs in; returns whether the browser is logged in afterwards.
+   */
+  LoginOutcome login(WebDriverPool.Lease lease, long sinceGeneration, BooleanSupplier login)
+      throws InterruptedException {
+    RemoteWebDriver driver = lease.driver();
+    loginLock.lockInterruptibly();
+    try {
+      if (generation > sinceGeneration) {
+        browserSession.restoreSession(driver);
+        lease.setTenantGeneration(generation);
+        return LoginOutcome.REUSED;
+      }
+
+      if (!login.getAsBoolean()) {
+        // Older than any generation, so the browser's logged-out state is never saved over the
+        // session, and the session is restored into it before its next use
+        lease.setTenantGeneration(-1);
+        return LoginOutcome.FAILED;
+      }
+      browserSession.saveSession(driver);
+      generation++;
+      lease.setTenantGeneration(generation);
+      return LoginOutcome.LOGGED_IN;
+    } finally {
+      loginLock.unlock();
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package dong.anqi.grocery;
+
+/**
+ * One Shipt login, and the stores checked through it.
+ * <p>
+ * Shipt remembers the selected store per account, server-side, so checks on one account have to
+ * take turns; they do so through the account's {@link SweepCoordinator}, which also lets one
+ * check observe all of the account's stores at once. Sweeps hold each store's availability text.
+ */
+public class ShiptAccount extends SweptAccount<ShiptSlotChecker.Store, String> {
+  public ShiptAccount(String name) {
+    super(name, ShiptSlotChecker.Store.class);
+  }
+}
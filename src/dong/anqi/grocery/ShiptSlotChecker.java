@@ -1,11 +1,16 @@
 package dong.anqi.grocery;
 
 import com.google.common.collect.ImmutableSet;
+import org.jetbrains.annotations.Nullable;
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebElement;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -31,62 +36,93 @@ public class ShiptSlotChecker extends AbstractGrocerySlotChecker {
   }
 
   private final Store store;
-
-  public ShiptSlotChecker(Store store, Logger logger) {
-    super("Shipt " + store.displayName(), logger);
+  private final ShiptAccount account;
+
+  /**
+   * @param account Login to check {@code store} through. Checkers on the same account share
+   *                sweeps over its stores; see {@link ShiptAccount}.
+   */
+  public ShiptSlotChecker(Store store, ShiptAccount account, CheckerContext context) {
+    super("Shipt " + store.displayName(), "Shipt " + account.getName(), ImmutableSet.of(ORIGIN),
+        context);
     this.store = store;
+    this.account = account;
+    account.addStore(store);
   }
 
-  @Override
-  public boolean currentlyHasSlot() {
-    return statusTracker.lastWasAvailable();
-  }
-
-  private static final String CREDS_PATH = "creds/shipt.creds";
+  private static final String ORIGIN = SiteUrls.resolve("https://shop.shipt.com");
+  private static final String LOGIN_PAGE = ORIGIN + "/login";
+  private static final String HOME_PAGE = ORIGIN + "/";
 
-  private static final String LOGIN_PAGE = "https://shop.shipt.com/login";
-  private static final String HOME_PAGE = "https://shop.shipt.com/";
-
-  private static final Set<String> ACCEPTED_HOME_URLS =
-      ImmutableSet.of("https://shop.shipt.com/", "https://shop.shipt.com");
+  private static final Set<String> ACCEPTED_HOME_URLS = ImmutableSet.of(HOME_PAGE, ORIGIN);
   private static final Set<String> UNAVAILABLE_TEXT =
       ImmutableSet.of("Not available", "Check back soon");
 
-  private void executeLogin() {
-    driver.get(LOGIN_PAGE);
+  /** @param availabilityText The next delivery window's text; null if it couldn't be found. */
+  static boolean isSlotAvailable(@Nullable String availabilityText) {
+    return availabilityText != null && !UNAVAILABLE_TEXT.contains(availabilityText);
+  }
+
+  private static final Duration LOGIN_DEADLINE = Duration.ofSeconds(15);
+  private static final Duration PAGE_LOAD_DEADLINE = Duration.ofSeconds(15);
+
+  private boolean executeLogin() {
+    loadPage(LOGIN_PAGE);
     if (!driver.getCurrentUrl().equals(LOGIN_PAGE)) {
       log(String.format("URL navigated to %s, already logged in?", driver.getCurrentUrl()));
+      return true;
     } else {
-      Utils.startInterruptibleSleep(Duration.ofSeconds(5));
+      awaitReady("login form", LOGIN_DEADLINE, PageReadiness.allOf(
+          PageReadiness.elementPresent(By.id("username")),
+          PageReadiness.elementPresent(By.id("password"))));
 
-      // TODO: Set values using JavascriptExecutor so we can run headless
-      Utils.Credentials creds = Utils.readCredentials(CREDS_PATH);
-      driver.findElement(By.id("username")).sendKeys(creds.user);
-      driver.findElement(By.id("password")).sendKeys(creds.pass);
-      driver.findElement(By.id("password")).submit();
+      Utils.Credentials creds = Utils.readCredentials(account.getCredsPath());
+      fillField(By.id("username"), creds.user);
+      fillField(By.id("password"), creds.pass);
+      submitForm(By.id("password"));
 
-      Utils.startInterruptibleSleep(Duration.ofSeconds(8));
+      boolean submitted = awaitReady("login submit", LOGIN_DEADLINE, PageReadiness.allOf(
+          PageReadiness.urlNot(LOGIN_PAGE),
+          PageReadiness.settled()));
 
       log(String.format("URL %s after login attempt", driver.getCurrentUrl()));
+      return submitted;
     }
   }
 
+  private static final By STORE_VIEW_BUTTON_QUERY =
+      By.cssSelector("button[data-test~=\"ShoppingStoreSelect-storeView\"]");
+  private static final By HOME_READY_QUERY = STORE_VIEW_BUTTON_QUERY;
+  private static final By STORE_FORM_QUERY =
+      By.cssSelector("form[data-test~=\"ChooseStore-form\"]");
+  private static final By STORE_BUTTON_QUERY =
+      By.cssSelector("div[data-test~=\"ChooseStore-store\"]");
+  private static final String DELIVERY_WINDOW_SELECTOR =
+      "div[data-test~=\"NextDeliveryWindow-text\"]";
+  private static final By DELIVERY_WINDOW_QUERY = By.cssSelector(DELIVERY_WINDOW_SELECTOR);
+  private static final ElementSnapshot.Spec DELIVERY_WINDOW_SPEC =
+      new ElementSnapshot.Spec().descendants("[class*=\"body\"]");
+
   private class StoreSelectFailureException extends Exception {}
 
-  private void ensureStoreSelection(boolean assumeOnHomePage) throws StoreSelectFailureException {
+  private void ensureStoreSelection(Store store, boolean assumeOnHomePage)
+      throws StoreSelectFailureException {
     if (!assumeOnHomePage) {
-      driver.get(HOME_PAGE);
+      loadPage(HOME_PAGE);
+      awaitReady("home page", PAGE_LOAD_DEADLINE, PageReadiness.allOf(
+          PageReadiness.elementPresent(HOME_READY_QUERY),
+          PageReadiness.settled()));
     }
 
-    driver.findElement(By.cssSelector("button[data-test~=\"ShoppingStoreSelect-storeView\"]"))
-        .click();
+    driver.findElement(STORE_VIEW_BUTTON_QUERY).click();
 
-    Utils.startInterruptibleSleep(Duration.ofSeconds(7));  // This one seems really laggy
+    // This one seems really laggy
+    awaitReady("store list", PAGE_LOAD_DEADLINE, PageReadiness.allOf(
+        PageReadiness.elementPresent(STORE_BUTTON_QUERY),
+        PageReadiness.settled()));
 
-    WebElement selectForm =
-        driver.findElement(By.cssSelector("form[data-test~=\"ChooseStore-form\"]"));
-    List<WebElement> storeButtons =
-        selectForm.findElements(By.cssSelector("div[data-test~=\"ChooseStore-store\"]"));
+    WebElement selectForm = driver.findElement(STORE_FORM_QUERY);
+    List<WebElement> storeButtons = selectForm.findElements(STORE_BUTTON_QUERY);
     Optional<WebElement> usedButtonOr = storeButtons.stream()
         .filter(we -> we.getAttribute("aria-label").equals(store.shiptAriaLabel()))
         .findFirst();
@@ -98,60 +134,65 @@ public class ShiptSlotChecker extends AbstractGrocerySlotChecker {
       throw new StoreSelectFailureException();
     }
 
-    Utils.startInterruptibleSleep(Duration.ofSeconds(5));
+    awaitReady("store selection", PAGE_LOAD_DEADLINE, PageReadiness.allOf(
+        PageReadiness.elementAbsent(STORE_FORM_QUERY),
+        PageReadiness.elementPresent(DELIVERY_WINDOW_QUERY),
+        PageReadiness.settled()));
 
     // TODO read page text again, and ensure that store selection stuck
   }
 
-  private StatusTracker statusTracker = new StatusTracker();
-
-  // This is a global (static) lock, because we're only using one account for Shipt, and the
-  // selected store seems to be a global persisted variable stored per account.
-  private static final AutocloseLock storeSelectMutex = new AutocloseLock(true);
-
-  @Override
-  public Optional<Status> doCheck() {
-    driver.get(HOME_PAGE);
-    if (!ACCEPTED_HOME_URLS.contains(driver.getCurrentUrl())) {
-      log(String.format("URL navigated to %s, retrying login?", driver.getCurrentUrl()));
-
-      executeLogin();
-      driver.get(HOME_PAGE);
+  /** @return The selected store's next delivery window text; empty if it couldn't be found. */
+  private Optional<String> readAvailabilityText() {
+    List<ElementSnapshot> deliveryElements =
+        extract(DELIVERY_WINDOW_SELECTOR, DELIVERY_WINDOW_SPEC);
+    if (deliveryElements.isEmpty()) {
+      logErr("No delivery info found");
+      return Optional.empty();
+    }
+    if (deliveryElements.size() != 1) {
+      logErr("Non-unique NextDeliveryWindow div, found " + deliveryElements.size());
     }
 
-    // TODO this should be a page loaded waiter in case site is bogged down
-    Utils.startInterruptibleSleep(Duration.ofSeconds(5));
-
-    if (!ACCEPTED_HOME_URLS.contains(driver.getCurrentUrl())) {
-      logErr(String.format("Failed to log in (URL %s), giving up", driver.getCurrentUrl()));
+    List<ElementSnapshot> bodyElements = deliveryElements.get(0).getDescendants();
+    if (bodyElements.isEmpty()) {
+      logErr("No delivery window text found");
       return Optional.empty();
     }
+    return Optional.of(bodyElements.get(0).getText());
+  }
 
-    String availabilityText = null;
-    try (AutoCloseable a = storeSelectMutex.lockAndGetResource()) {
-      ensureStoreSelection(true);
-
-      List<WebElement> deliveryElements =
-          driver.findElements(By.cssSelector("div[data-test~=\"NextDeliveryWindow-text\"]"));
-      if (deliveryElements.isEmpty()) {
-        logErr("No delivery info found");
-        return Optional.empty();
+  /**
+   * Selects the account's stores in turn and reads their next delivery windows, starting on the
+   * home page with this checker's own store and going round from there, for as long as
+   * {@link #hasTimeToSweep()}. Stores that can't be read are left out, as are stores it didn't
+   * reach, so that their checkers sweep next, starting from themselves.
+   */
+  private Map<Store, String> sweepStores() {
+    List<Store> stores = new ArrayList<>(account.getStores());
+    Collections.rotate(stores, -stores.indexOf(store));
+
+    Map<Store, String> availability = new EnumMap<>(Store.class);
+    boolean onHomePage = true;
+    for (Store s : stores) {
+      if (!onHomePage && !hasTimeToSweep()) { break; }
+      try (CheckMetrics.Span span = timePhase(CheckMetrics.Phase.STORE_SELECTION)) {
+        ensureStoreSelection(s, onHomePage);
+      } catch (StoreSelectFailureException e) {
+        continue;
+      } finally {
+        onHomePage = false;
       }
-      if (deliveryElements.size() != 1) {
-        logErr("Non-unique NextDeliveryWindow div, found " + deliveryElements.size());
-      }
-
-      availabilityText =
-          deliveryElements.get(0).findElement(By.cssSelector("[class*=\"body\"]")).getText();
-    } catch (StoreSelectFailureException e) {
-      return Optional.empty();
-    } catch (Exception e) {
-      e.printStackTrace();
-      logErr("Unable to take lock for Shipt store selection");
+      readAvailabilityText().ifPresent(text -> availability.put(s, text));
     }
 
-    boolean slotAvailable =
-        availabilityText != null && !UNAVAILABLE_TEXT.contains(availabilityText);
+    log(String.format("Swept %d of %d stores on account %s",
+        availability.size(), stores.size(), account.getName()));
+    return availability;
+  }
+
+  private Status report(String availabilityText) {
+    boolean slotAvailable = isSlotAvailable(availabilityText);
 
     Status status = statusTracker.update(slotAvailable ?
         StatusTracker.State.HAS_SLOT :
@@ -160,12 +201,60 @@ public class ShiptSlotChecker extends AbstractGrocerySlotChecker {
     if (slotAvailable) {
       String message = "Spots available for " + availabilityText;
       status.notificationMessage = Optional.of(message);
+      status.earliestWindow = Optional.of(availabilityText);
       log(message);
     } else {
       status.notificationMessage = Optional.empty();
       log("no slots");
     }
 
-    return Optional.of(status);
+    return status;
+  }
+
+  /** Goes through the account's sweeps; see {@link #checkBySweep}. */
+  @Override
+  protected Optional<Status> check() {
+    return checkBySweep(account, store, availabilityText -> {
+      log("Using " + account.getName() + "'s last sweep");
+      return Optional.of(report(availabilityText));
+    });
+  }
+
+  // Stores are picked by aria-label, not by their logos
+  @Override
+  protected BrowserProfile getBrowserProfile() {
+    return BrowserProfile.LEAN;
+  }
+
+  @Override
+  protected Optional<Status> runCheck() {
+    loadPage(HOME_PAGE);
+    if (!ACCEPTED_HOME_URLS.contains(driver.getCurrentUrl())) {
+      log(String.format("URL navigated to %s, retrying login?", driver.getCurrentUrl()));
+
+      login(this::executeLogin);
+      loadPage(HOME_PAGE);
+    }
+
+    awaitReady("home page", PAGE_LOAD_DEADLINE, PageReadiness.anyOf(
+        PageReadiness.allOf(
+            PageReadiness.elementPresent(HOME_READY_QUERY),
+            PageReadiness.settled()),
+        PageReadiness.not(PageReadiness.urlIn(ACCEPTED_HOME_URLS))));
+
+    if (!ACCEPTED_HOME_URLS.contains(driver.getCurrentUrl())) {
+      logErr(String.format("Failed to log in (URL %s), giving up", driver.getCurrentUrl()));
+      return Optional.empty();
+    }
+
+    Map<Store, String> swept = sweepStores();
+    recordSweep(swept);
+    String availabilityText = swept.get(store);
+    if (availabilityText == null) {
+      logErr("No availability for " + store.displayName() + " in sweep");
+      return Optional.empty();
+    }
+
+    return Optional.of(report(availabilityText));
   }
 }
@@ -0,0 +1,55 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableList;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Points the checkers at a {@link ReplayServer} instead of the live sites, when the
+ * {@code grocery.replay} system property is set to the server's base URL (e.g.
+ * {@code http://127.0.0.1:8700}). Each site gets its own port, counting up from the base port in
+ * the order of {@link #SITE_ORIGINS}, so that root-relative links on replayed pages still land on
+ * the right site.
+ * <p>
+ * Checkers wrap their URL constants in {@link #resolve}, which leaves them untouched otherwise.
+ */
+enum SiteUrls {
+  ;
+
+  static final List<String> SITE_ORIGINS = ImmutableList.of(
+      "https://www.instacart.com",
+      "https://sameday.costco.com",
+      "https://www.costco.com",
+      "https://shop.shipt.com",
+      "https://www.sayweee.com");
+
+  private static final String REPLAY_BASE = System.getProperty("grocery.replay", "");
+
+  static boolean isReplaying() {
+    return !REPLAY_BASE.isEmpty();
+  }
+
+  /** Origin standing in for {@code SITE_ORIGINS.get(index)} on a replay server at {@code base}. */
+  static String replayOrigin(URI base, int index) {
+    return String.format("%s://%s:%d", base.getScheme(), base.getHost(), base.getPort() + index);
+  }
+
+  /** {@code url}, or its replay stand-in if replaying and the URL is on a replayed site. */
+  static String resolve(String url) {
+    if (!isReplaying()) { return url; }
+
+    for (int i = 0; i < SITE_ORIGINS.size(); i++) {
+      String origin = SITE_ORIGINS.get(i);
+      if (url.equals(origin) || url.startsWith(origin + "/")) {
+        return replayOrigin(URI.create(REPLAY_BASE), i) + url.substring(origin.length());
+      }
+    }
+    return url;
+  }
+
+  /** Domain for a cookie meant for {@code domain}; the replay server's host if replaying. */
+  static String cookieDomain(String domain) {
+    return isReplaying() ? URI.create(REPLAY_BASE).getHost() : domain;
+  }
+}
@@ -0,0 +1,115 @@
+package dong.anqi.grocery;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Learns when a checker's slots tend to open, from past NO_SLOT to HAS_SLOT transitions, and
+ * turns that into a per-hour multiplier on the check interval.
+ * <p>
+ * Openings are counted by hour of the week and by hour of the day (which has more data per bucket,
+ * for when weekly patterns are still sparse), smoothed into neighboring hours, and blended. Given
+ * an opening probability p per hour, checking at a rate proportional to sqrt(p) minimizes the
+ * expected time to notice an opening for a fixed number of checks. The multipliers are scaled so
+ * that the average rate over a week is no higher than without a forecast.
+ */
+class SlotOpeningForecast {
+  static final int HOURS_PER_WEEK = 7 * 24;
+
+  /** Below this many openings, the forecast is flat. */
+  static final int MIN_OPENINGS = 5;
+  static final double MIN_FACTOR = 0.25;
+  static final double MAX_FACTOR = 4;
+
+  /** Pseudo-count added to every hour, so that hours without openings still get checked. */
+  private static final double PRIOR_PER_HOUR = 0.5;
+
+  private static final SlotOpeningForecast FLAT = new SlotOpeningForecast(null, ZoneId.of("UTC"));
+
+  private final double[] intervalFactors;  // null if flat
+  private final ZoneId zone;
+
+  private SlotOpeningForecast(double[] intervalFactors, ZoneId zone) {
+    this.intervalFactors = intervalFactors;
+    this.zone = zone;
+  }
+
+  static SlotOpeningForecast flat() {
+    return FLAT;
+  }
+
+  private static int hourOfWeek(ZonedDateTime time) {
+    return (time.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue()) * 24 + time.getHour();
+  }
+
+  /** Spreads each count a little into the neighboring buckets, wrapping around. */
+  private static double[] smooth(double[] counts) {
+    double[] smoothed = new double[counts.length];
+    for (int i = 0; i < counts.length; i++) {
+      double prev = counts[(i + counts.length - 1) % counts.length];
+      double next = counts[(i + 1) % counts.length];
+      smoothed[i] = 0.25 * prev + 0.5 * counts[i] + 0.25 * next + PRIOR_PER_HOUR;
+    }
+    return smoothed;
+  }
+
+  private static double[] normalized(double[] weights) {
+    double total = 0;
+    for (double w : weights) { total += w; }
+    double[] result = new double[weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      result[i] = weights[i] / total;
+    }
+    return result;
+  }
+
+  /** @param openings When slots went from unavailable to available, in any order. */
+  static SlotOpeningForecast fromOpenings(List<Instant> openings, ZoneId zone) {
+    if (openings.size() < MIN_OPENINGS) {
+      return FLAT;
+    }
+
+    double[] weekly = new double[HOURS_PER_WEEK];
+    double[] daily = new double[24];
+    for (Instant opening : openings) {
+      ZonedDateTime time = opening.atZone(zone);
+      weekly[hourOfWeek(time)]++;
+      daily[time.getHour()]++;
+    }
+    weekly = normalized(smooth(weekly));
+    daily = normalized(smooth(daily));
+
+    // Check rate per hour, proportional to sqrt(p); each hour of a day gets 1/7 of the daily mass
+    double[] rates = new double[HOURS_PER_WEEK];
+    double meanRate = 0;
+    for (int h = 0; h < HOURS_PER_WEEK; h++) {
+      double p = 0.5 * weekly[h] + 0.5 * daily[h % 24] / 7;
+      rates[h] = Math.sqrt(p);
+      meanRate += rates[h] / HOURS_PER_WEEK;
+    }
+
+    double[] factors = new double[HOURS_PER_WEEK];
+    double clampedMeanRate = 0;
+    for (int h = 0; h < HOURS_PER_WEEK; h++) {
+      factors[h] = Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, meanRate / rates[h]));
+      clampedMeanRate += 1 / factors[h] / HOURS_PER_WEEK;
+    }
+    // Clamping can push the total rate above 1; stretch everything back down if so
+    if (clampedMeanRate > 1) {
+      for (int h = 0; h < HOURS_PER_WEEK; h++) {
+        factors[h] *= clampedMeanRate;
+      }
+    }
+
+    return new SlotOpeningForecast(factors, zone);
+  }
+
+  /** Multiplier for a check interval starting at {@code when}; below 1 means check more often. */
+  double intervalFactor(Instant when) {
+    if (intervalFactors == null) { return 1; }
+    return intervalFactors[hourOfWeek(when.atZone(zone))];
+  }
+}
@@ -1,13 +1,32 @@
 package dong.anqi.grocery;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 import java.awt.event.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class StatusDialog extends JFrame {
+  /** Lines kept for display; older lines are only in the log files. */
+  private static final int MAX_LINES = 5000;
+  private static final int REFRESH_MILLIS = 200;
+  private static final String ALL_CHECKERS = "All checkers";
+
   private JPanel contentPane;
   private JTextArea logTextArea;
   private JTextField commandTextField;
+  private JComboBox<String> checkerFilterComboBox;
+
+  /** Lines logged since the last refresh, from any thread. */
+  private final Queue<String> pendingLines = new ConcurrentLinkedQueue<>();
+  /** The most recent lines, oldest first. Only touched on the EDT. */
+  private final ArrayDeque<String> lines = new ArrayDeque<>(MAX_LINES);
+  private Optional<String> checkerFilter = Optional.empty();  // only touched on the EDT
 
   /** Thread safety warning! Access through {@link #getCallbacks()}. */
   private volatile Optional<Callbacks> callbacks;
@@ -53,6 +72,17 @@ public class StatusDialog extends JFrame {
         },
         KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0),
         JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT);
+
+    checkerFilterComboBox.addItem(ALL_CHECKERS);
+    checkerFilterComboBox.addActionListener(e -> {
+      Object selected = checkerFilterComboBox.getSelectedItem();
+      checkerFilter = ALL_CHECKERS.equals(selected) || selected == null
+          ? Optional.empty() : Optional.of(selected.toString());
+      redisplayLines();
+    });
+
+    // Batch updates, so that a burst of logging costs one document change rather than hundreds
+    new Timer(REFRESH_MILLIS, e -> appendPendingLines()).start();
   }
 
   private void onExit() {
@@ -60,9 +90,65 @@ public class StatusDialog extends JFrame {
     dispose();  // autogenerated
   }
 
+  /** Safe to call from any thread; the line shows up at the next refresh. */
   public void logText(final String s) {
     System.out.println(s);  // FIXME debugging
-    logTextArea.append(s + "\n");
+    pendingLines.add(s);
+  }
+
+  /** Checkers offered in the filter; lines are matched by the "description: " prefix. */
+  public void setCheckerDescriptions(Collection<String> descriptions) {
+    List<String> items = new ArrayList<>(descriptions);
+    SwingUtilities.invokeLater(() -> {
+      checkerFilterComboBox.removeAllItems();
+      checkerFilterComboBox.addItem(ALL_CHECKERS);
+      items.forEach(checkerFilterComboBox::addItem);
+    });
+  }
+
+  private boolean matchesFilter(String line) {
+    return checkerFilter.map(d -> line.contains(" " + d + ": ")).orElse(true);
+  }
+
+  private void appendPendingLines() {
+    if (pendingLines.isEmpty()) { return; }
+
+    StringBuilder shown = new StringBuilder();
+    String line;
+    while ((line = pendingLines.poll()) != null) {
+      if (lines.size() == MAX_LINES) {
+        lines.removeFirst();
+      }
+      lines.addLast(line);
+      if (matchesFilter(line)) {
+        shown.append(line).append('\n');
+      }
+    }
+    if (shown.length() == 0) { return; }
+
+    logTextArea.append(shown.toString());
+
+    // The text ends with a newline, hence the extra empty "line"
+    int excessLines = logTextArea.getLineCount() - 1 - MAX_LINES;
+    if (excessLines > 0) {
+      try {
+        logTextArea.replaceRange("", 0, logTextArea.getLineStartOffset(excessLines));
+      } catch (BadLocationException e) {
+        logTextArea.setText("");
+      }
+    }
+    logTextArea.setCaretPosition(logTextArea.getDocument().getLength());
+  }
+
+  private void redisplayLines() {
+    StringBuilder shown = new StringBuilder();
+    for (String line : lines) {
+      if (matchesFilter(line)) {
+        shown.append(line).append('\n');
+      }
+    }
+    logTextArea.setText(shown.toString());
+    logTextArea.setCaretPosition(logTextArea.getDocument().getLength());
   }
 
   // Testing only
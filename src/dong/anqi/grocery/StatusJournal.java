@@ -0,0 +1,192 @@
+package dong.anqi.grocery;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Append-only record of one checker's state transitions, so that a {@link StatusTracker} can pick
+ * up where it left off after a restart.
+ * <p>
+ * The journal is a fixed-size memory-mapped file of 16-byte records, each carrying a checksum, so
+ * that reading it back is a single scan that stops at the first record that is empty or was torn
+ * by a crash. When the file fills up, it is compacted into a fresh file holding only recent
+ * transitions, which then replaces the old one.
+ * <p>
+ * Not thread-safe; a journal belongs to the tracker that opened it.
+ */
+class StatusJournal implements AutoCloseable {
+  static final class Entry {
+    final Instant time;
+    final StatusTracker.State state;
+
+    Entry(Instant time, StatusTracker.State state) {
+      this.time = time;
+      this.state = state;
+    }
+  }
+
+  private static final int MAGIC = 0x67534a31;  // "gSJ1"
+  private static final int HEADER_BYTES = 8;
+  private static final int RECORD_BYTES = 16;
+  private static final int FILE_BYTES = HEADER_BYTES + RECORD_BYTES * 16 * 1024;
+
+  /** Compaction drops transitions older than this, but always keeps the latest one. */
+  static final Duration RETENTION = Duration.ofDays(8 * 7);
+
+  private final Path file;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private final List<Entry> entries = new ArrayList<>();
+  private boolean failed = false;
+
+  private StatusJournal(Path file) {
+    this.file = file;
+  }
+
+  /** Opens (or creates) the journal for {@code key} in {@code directory}, reading it back. */
+  static StatusJournal open(Path directory, String key) throws IOException {
+    Files.createDirectories(directory);
+    StatusJournal journal =
+        new StatusJournal(directory.resolve(key.replaceAll("[^A-Za-z0-9._-]+", "_") + ".journal"));
+    journal.map();
+    journal.readEntries();
+    if (journal.buffer.position() > FILE_BYTES / 2) {
+      journal.compact();
+    }
+    return journal;
+  }
+
+  private void map() throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+    if (buffer.getInt(0) != MAGIC) {
+      // New file, or not one of ours: start over
+      writeEmpty(buffer);
+    }
+  }
+
+  private static void writeEmpty(ByteBuffer buffer) {
+    buffer.clear();
+    buffer.put(new byte[buffer.capacity()]);
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, RECORD_BYTES);
+    buffer.position(HEADER_BYTES);
+  }
+
+  private static int checksum(long timeMillis, int state) {
+    return (Long.hashCode(timeMillis) * 31 + state) ^ MAGIC;
+  }
+
+  private void readEntries() {
+    entries.clear();
+    StatusTracker.State[] states = StatusTracker.State.values();
+
+    int position = HEADER_BYTES;
+    while (position + RECORD_BYTES <= FILE_BYTES) {
+      long timeMillis = buffer.getLong(position);
+      int state = buffer.getInt(position + 8);
+      int check = buffer.getInt(position + 12);
+      if (timeMillis == 0 || state < 0 || state >= states.length ||
+          check != checksum(timeMillis, state)) {
+        break;
+      }
+      entries.add(new Entry(Instant.ofEpochMilli(timeMillis), states[state]));
+      position += RECORD_BYTES;
+    }
+    buffer.position(position);
+  }
+
+  private static void putRecord(ByteBuffer buffer, Entry entry) {
+    long timeMillis = entry.time.toEpochMilli();
+    int state = entry.state.ordinal();
+    int position = buffer.position();
+    buffer.putLong(position, timeMillis);
+    buffer.putInt(position + 8, state);
+    buffer.putInt(position + 12, checksum(timeMillis, state));
+    buffer.position(position + RECORD_BYTES);
+  }
+
+  /** The most recent transition, if any were recorded. */
+  Optional<Entry> last() {
+    return entries.isEmpty() ? Optional.empty() : Optional.of(entries.get(entries.size() - 1));
+  }
+
+  /** Every transition still in the journal, oldest first. */
+  List<Entry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Records a transition to {@code state} at {@code time}. Failures are reported once and then
+   * disable the journal, since losing history shouldn't stop the checker.
+   */
+  void append(StatusTracker.State state, Instant time) {
+    if (failed) { return; }
+
+    try {
+      if (buffer.remaining() < RECORD_BYTES) {
+        compact();
+      }
+      Entry entry = new Entry(time, state);
+      putRecord(buffer, entry);
+      buffer.force();
+      entries.add(entry);
+    } catch (IOException | RuntimeException e) {
+      failed = true;
+      e.printStackTrace();
+    }
+  }
+
+  /** Rewrites the journal with only the transitions within {@link #RETENTION}. */
+  private void compact() throws IOException {
+    Instant cutoff = Instant.now().minus(RETENTION);
+    List<Entry> kept = new ArrayList<>();
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (entry.time.isAfter(cutoff) || i == entries.size() - 1) {
+        kept.add(entry);
+      }
+    }
+    // Retention alone may not free enough space; keep at most half a file
+    int maxKept = (FILE_BYTES - HEADER_BYTES) / RECORD_BYTES / 2;
+    if (kept.size() > maxKept) {
+      kept = new ArrayList<>(kept.subList(kept.size() - maxKept, kept.size()));
+    }
+
+    Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+    try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      MappedByteBuffer newBuffer = out.map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+      writeEmpty(newBuffer);
+      for (Entry entry : kept) {
+        putRecord(newBuffer, entry);
+      }
+      newBuffer.force();
+    }
+
+    channel.close();
+    Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    map();
+    readEntries();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -1,10 +1,13 @@
 package dong.anqi.grocery;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
-public class StatusTracker {
+public class StatusTracker implements AutoCloseable {
   public enum State { HAS_SLOT, NO_SLOT }
 
   /**
@@ -13,6 +16,30 @@ public class StatusTracker {
   private Optional<State> trackerState = Optional.empty();
   Instant stateChangeTime = Instant.now();
 
+  private final Optional<StatusJournal> journal;
+
+  /** A tracker that starts from scratch every run. */
+  public StatusTracker() {
+    this.journal = Optional.empty();
+  }
+
+  /**
+   * A tracker that records transitions to {@code journal}, and resumes from its last transition,
+   * so that edges and durations carry across restarts.
+   */
+  StatusTracker(StatusJournal journal) {
+    this.journal = Optional.of(journal);
+    journal.last().ifPresent(entry -> {
+      trackerState = Optional.of(entry.state);
+      stateChangeTime = entry.time;
+    });
+  }
+
+  /** Transitions recorded so far, oldest first; empty if this tracker isn't journaled. */
+  List<StatusJournal.Entry> getHistory() {
+    return journal.map(StatusJournal::getEntries).orElse(List.of());
+  }
+
   boolean lastWasAvailable() {
     return trackerState.filter(s -> s == State.HAS_SLOT).isPresent();
   }
@@ -39,8 +66,37 @@ public class StatusTracker {
     });
 
     status.slotFound = (newState == State.HAS_SLOT);
+    if (!status.slotFound) {
+      status.slotCount = Optional.of(0);
+    }
+    if (trackerState.isEmpty() || status.isEdgeTransition) {
+      journal.ifPresent(j -> j.append(newState, stateChangeTime));
+    }
     trackerState = Optional.of(newState);
 
     return status;
   }
+
+  /** When slots went from unavailable to available, oldest first, as far back as history goes. */
+  List<Instant> getSlotOpenings() {
+    List<StatusJournal.Entry> history = getHistory();
+    List<Instant> openings = new ArrayList<>();
+    for (int i = 1; i < history.size(); i++) {
+      if (history.get(i - 1).state == State.NO_SLOT && history.get(i).state == State.HAS_SLOT) {
+        openings.add(history.get(i).time);
+      }
+    }
+    return openings;
+  }
+
+  @Override
+  public void close() {
+    journal.ifPresent(j -> {
+      try {
+        j.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+  }
 }
@@ -0,0 +1,125 @@
+package dong.anqi.grocery;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Lets checkers that read the same site share one pass over it. The first checker due for a check
+ * runs a sweep that observes every key (e.g. every store on an account); checkers due soon after
+ * take their key's observation from that sweep instead of running their own.
+ * <p>
+ * Sweeps are numbered, and each key remembers the last sweep it took an observation from, so a
+ * checker never reports the same observation twice: once it has used a sweep, its next check
+ * waits for, or runs, a newer one. Only one sweep runs at a time, which also makes the coordinator
+ * the lock for whatever state a sweep changes on the site.
+ *
+ * @param <K> What a sweep observes, e.g. a store.
+ * @param <V> An observation.
+ */
+class SweepCoordinator<K, V> {
+  /** One pass over every key, and whatever else its caller wants back from it. */
+  interface Sweep<K, V> {
+    /** Every key the sweep observed; keys it couldn't observe are left out. */
+    Map<K, V> getObservations();
+  }
+
+  /** What {@link #sweep} came to for one key. */
+  static final class Outcome<V, S> {
+    private final Optional<S> ranSweep;
+    private final Optional<V> observation;
+
+    private Outcome(Optional<S> ranSweep, Optional<V> observation) {
+      this.ranSweep = ranSweep;
+      this.observation = observation;
+    }
+
+    /** The sweep this call ran; empty if an earlier sweep had a fresh observation instead. */
+    Optional<S> getRanSweep() { return ranSweep; }
+
+    /** The key's observation, from whichever sweep; empty if the sweep couldn't make one. */
+    Optional<V> getObservation() { return observation; }
+  }
+
+  private final Duration maxAge;
+
+  /** Held for the length of a sweep; fair, so that waiting checkers go in turn. */
+  private final ReentrantLock lock = new ReentrantLock(true);
+
+  // Guarded by lock
+  private long generation = 0;
+  private Map<K, V> observations = ImmutableMap.of();
+  private Instant sweptAt = Instant.MIN;
+  private final Map<K, Long> takenGeneration = new HashMap<>();
+
+  /** @param maxAge How old a sweep may get before checkers stop taking observations from it. */
+  SweepCoordinator(Duration maxAge) {
+    this.maxAge = maxAge;
+  }
+
+  private boolean hasFresh(K key) {
+    return generation > takenGeneration.getOrDefault(key, 0L) &&
+        observations.containsKey(key) &&
+        Duration.between(sweptAt, Instant.now()).compareTo(maxAge) < 0;
+  }
+
+  private V take(K key) {
+    takenGeneration.put(key, generation);
+    return observations.get(key);
+  }
+
+  private void lock(Duration wait) throws InterruptedException, TimeoutException {
+    if (!lock.tryLock(wait.toMillis(), TimeUnit.MILLISECONDS)) {
+      throw new TimeoutException("Sweep still running after " + wait.getSeconds() + "s");
+    }
+  }
+
+  /**
+   * {@code key}'s observation from a recent sweep it hasn't used yet. Waits for a sweep in
+   * progress, since its result is likely to be what's wanted.
+   *
+   * @param wait How long to wait for a sweep in progress.
+   * @return Empty if there is none; the caller should then {@link #sweep} itself.
+   */
+  Optional<V> takeIfFresh(K key, Duration wait) throws InterruptedException, TimeoutException {
+    lock(wait);
+    try {
+      return hasFresh(key) ? Optional.of(take(key)) : Optional.empty();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Runs {@code sweep}, unless a sweep that finished while this call waited its turn already has
+   * an unused observation of {@code key}.
+   *
+   * @param wait  How long to wait for a sweep in progress before giving up.
+   * @param sweep Observes every key it can.
+   */
+  <S extends Sweep<K, V>> Outcome<V, S> sweep(K key, Duration wait, Supplier<S> sweep)
+      throws InterruptedException, TimeoutException {
+    lock(wait);
+    try {
+      Optional<S> ranSweep = Optional.empty();
+      if (!hasFresh(key)) {
+        ranSweep = Optional.of(sweep.get());
+        observations = ImmutableMap.copyOf(ranSweep.get().getObservations());
+        sweptAt = Instant.now();
+        generation++;
+      }
+      return new Outcome<>(ranSweep,
+          observations.containsKey(key) ? Optional.of(take(key)) : Optional.empty());
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package dong.anqi.grocery;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * One login on a site whose checkers share sweeps over all of the login's stores (see
+ * {@link SweepCoordinator}), and the stores checked through it. Separate accounts, each with its
+ * own credentials file, don't share any state, and check in parallel.
+ *
+ * @param <S> The site's stores.
+ * @param <V> What a sweep observes of one store.
+ */
+public class SweptAccount<S extends Enum<S>, V> {
+  /**
+   * A little over the default check interval plus its jitter, so that a sweep is still fresh when
+   * each of the account's other checkers comes due, and the account is swept about once an
+   * interval.
+   */
+  private static final Duration SWEEP_MAX_AGE = Duration.ofMinutes(5);
+
+  private final String name;
+  private final String credsPath;
+  private final Class<S> storeClass;
+  private final Set<S> stores;
+  private final SweepCoordinator<S, V> sweeps = new SweepCoordinator<>(SWEEP_MAX_AGE);
+
+  /** @param name Also names the credentials file, {@code creds/<name>.creds}. */
+  protected SweptAccount(String name, Class<S> storeClass) {
+    this.name = name;
+    this.credsPath = "creds/" + name + ".creds";
+    this.storeClass = storeClass;
+    this.stores = Collections.synchronizedSet(EnumSet.noneOf(storeClass));
+  }
+
+  public String getName() { return name; }
+
+  String getCredsPath() { return credsPath; }
+
+  void addStore(S store) {
+    stores.add(store);
+  }
+
+  /** Stores with a checker on this account, in declaration order. */
+  Set<S> getStores() {
+    Set<S> copy = EnumSet.noneOf(storeClass);
+    synchronized (stores) {
+      copy.addAll(stores);
+    }
+    return copy;
+  }
+
+  /** Latest observation per store. */
+  SweepCoordinator<S, V> getSweeps() { return sweeps; }
+}
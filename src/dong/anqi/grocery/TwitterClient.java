@@ -26,17 +26,12 @@ public class TwitterClient {
 
   private Twitter twitterInstance = factory.getInstance();
 
-  private static final int MAX_DM_CHARS = 1000;
+  static final int MAX_DM_CHARS = 1000;
 
   private static final long DEFAULT_USER_ID = 2783502499L;
   public boolean sendDirectMessage(String message) {
     try {
-      if (message.length() > MAX_DM_CHARS) {
-        message = message.substring(0, MAX_DM_CHARS);
-      }
-
-      DirectMessage result = twitterInstance.sendDirectMessage(DEFAULT_USER_ID, message);
-      System.out.printf("Sent Twitter DM to %s\n", result.getRecipientId());
+      sendDirectMessageOrThrow(message);
       return true;
     } catch (TwitterException te) {
       te.printStackTrace();
@@ -44,6 +39,16 @@ public class TwitterClient {
     return false;
   }
 
+  /** Like {@link #sendDirectMessage}, but leaves failures (e.g. rate limiting) to the caller. */
+  public void sendDirectMessageOrThrow(String message) throws TwitterException {
+    if (message.length() > MAX_DM_CHARS) {
+      message = message.substring(0, MAX_DM_CHARS);
+    }
+
+    DirectMessage result = twitterInstance.sendDirectMessage(DEFAULT_USER_ID, message);
+    System.out.printf("Sent Twitter DM to %s\n", result.getRecipientId());
+  }
+
   public static void main(String[] args) {
     boolean successful = new TwitterClient().sendDirectMessage("test from refactored program");
     System.exit(successful ? 0 : -1);
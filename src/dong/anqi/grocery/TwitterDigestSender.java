@@ -0,0 +1,228 @@
+package dong.anqi.grocery;
+
+import twitter4j.TwitterException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Twitter notification channel that merges events arriving close together into one digest DM,
+ * paces sends to stay inside Twitter's DM limits, and retries failed sends with backoff.
+ * <p>
+ * Delivering to this channel only queues the event; sending happens on the sender's own thread.
+ */
+public class TwitterDigestSender implements NotificationDispatcher.Channel, AutoCloseable {
+  /** Classic token bucket: holds up to {@code capacity} sends, refilled one per interval. */
+  static final class TokenBucket {
+    private final int capacity;
+    private final Duration refillInterval;
+    private double tokens;
+    private Instant lastRefill;
+
+    TokenBucket(int capacity, Duration refillInterval) {
+      this.capacity = capacity;
+      this.refillInterval = refillInterval;
+      this.tokens = capacity;
+      this.lastRefill = Instant.now();
+    }
+
+    private void refill(Instant now) {
+      double elapsed = Duration.between(lastRefill, now).toMillis();
+      tokens = Math.min(capacity, tokens + elapsed / refillInterval.toMillis());
+      lastRefill = now;
+    }
+
+    synchronized boolean tryAcquire() {
+      refill(Instant.now());
+      if (tokens >= 1) {
+        tokens -= 1;
+        return true;
+      }
+      return false;
+    }
+
+    synchronized Duration timeUntilAvailable() {
+      refill(Instant.now());
+      if (tokens >= 1) { return Duration.ZERO; }
+      return Duration.ofMillis((long) Math.ceil((1 - tokens) * refillInterval.toMillis()));
+    }
+  }
+
+  // Twitter allows 1000 DMs per user per day, i.e. one per 86.4s on average
+  private static final int BURST_SENDS = 5;
+  private static final Duration SEND_INTERVAL = Duration.ofSeconds(90);
+
+  private static final Duration RETRY_BASE_DELAY = Duration.ofSeconds(30);
+  private static final int MAX_SEND_ATTEMPTS = 5;
+
+  private final TwitterClient twitterClient;
+  private final Duration coalesceWindow;
+  private final Logger logger;
+  private final TokenBucket tokenBucket = new TokenBucket(BURST_SENDS, SEND_INTERVAL);
+
+  private final ScheduledExecutorService sendExecutor =
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "twitter-sender");
+        t.setDaemon(true);
+        return t;
+      });
+
+  /** Events not yet sent, oldest first. Guarded by itself. */
+  private final List<String> pendingEvents = new ArrayList<>();
+  private boolean flushScheduled = false;  // guarded by pendingEvents
+  private int failedAttempts = 0;  // only touched by sendExecutor
+
+  private final Map<String, Instant> lastFailureReports = new ConcurrentHashMap<>();
+
+  /**
+   * @param coalesceWindow How long to wait after an event for others to send along with it.
+   */
+  public TwitterDigestSender(TwitterClient twitterClient, Duration coalesceWindow, Logger logger) {
+    if (logger == null) { throw new NullPointerException(); }
+
+    this.twitterClient = twitterClient;
+    this.coalesceWindow = coalesceWindow;
+    this.logger = logger;
+  }
+
+  @Override
+  public String getName() { return "Twitter"; }
+
+  @Override
+  public Duration getTimeout() { return Duration.ofSeconds(5); }
+
+  @Override
+  public void deliver(NotificationDispatcher.Notification notification) {
+    enqueue(notification.body);
+  }
+
+  public void enqueue(String event) {
+    synchronized (pendingEvents) {
+      pendingEvents.add(event);
+      if (!flushScheduled) {
+        flushScheduled = true;
+        scheduleFlush(coalesceWindow);
+      }
+    }
+  }
+
+  /**
+   * Rate limits failure reports per key (e.g. checker), since a broken site fails every check.
+   *
+   * @return Whether a failure for {@code key} should be reported now.
+   */
+  public boolean shouldReportFailure(String key, Duration minInterval) {
+    final Instant now = Instant.now();
+    final boolean[] report = {false};
+    lastFailureReports.compute(key, (k, last) -> {
+      if (last == null || Duration.between(last, now).compareTo(minInterval) >= 0) {
+        report[0] = true;
+        return now;
+      }
+      return last;
+    });
+    return report[0];
+  }
+
+  private void scheduleFlush(Duration delay) {
+    if (sendExecutor.isShutdown()) { return; }
+    sendExecutor.schedule(this::flush, delay.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /** Takes as many pending events as fit in one DM. Must hold the lock on pendingEvents. */
+  private List<String> takeDigestBatch() {
+    List<String> batch = new ArrayList<>();
+    int length = 0;
+    while (!pendingEvents.isEmpty()) {
+      String next = pendingEvents.get(0);
+      // Leave room for the digest header and bullets
+      if (!batch.isEmpty() && length + next.length() + 3 > TwitterClient.MAX_DM_CHARS - 20) {
+        break;
+      }
+      batch.add(pendingEvents.remove(0));
+      length += next.length() + 3;
+    }
+    return batch;
+  }
+
+  static String formatDigest(List<String> events) {
+    if (events.size() == 1) {
+      return events.get(0);
+    }
+
+    StringBuilder sb = new StringBuilder(events.size() + " updates:");
+    for (String event : events) {
+      sb.append("\n- ").append(event);
+    }
+    return sb.toString();
+  }
+
+  private void flush() {
+    List<String> batch;
+    synchronized (pendingEvents) {
+      if (pendingEvents.isEmpty()) {
+        flushScheduled = false;
+        return;
+      }
+      if (!tokenBucket.tryAcquire()) {
+        // Keep coalescing until we're allowed to send again
+        scheduleFlush(tokenBucket.timeUntilAvailable());
+        return;
+      }
+      batch = takeDigestBatch();
+    }
+
+    try {
+      twitterClient.sendDirectMessageOrThrow(formatDigest(batch));
+      failedAttempts = 0;
+    } catch (TwitterException e) {
+      failedAttempts++;
+      if (failedAttempts >= MAX_SEND_ATTEMPTS) {
+        logger.logErr(String.format(
+            "%s Dropping Twitter digest of %d event(s) after %d attempts: %s",
+            Utils.nowString(), batch.size(), failedAttempts, e.getMessage()));
+        failedAttempts = 0;
+      } else {
+        synchronized (pendingEvents) {
+          pendingEvents.addAll(0, batch);
+        }
+      }
+
+      Duration backoff = RETRY_BASE_DELAY.multipliedBy(1L << Math.min(failedAttempts, 6));
+      if (e.exceededRateLimitation() && e.getRateLimitStatus() != null) {
+        backoff = Duration.ofSeconds(Math.max(
+            backoff.getSeconds(), e.getRateLimitStatus().getSecondsUntilReset()));
+      }
+      logger.logErr(String.format("%s Twitter send failed, retrying in %ds: %s",
+          Utils.nowString(), backoff.getSeconds(), e.getMessage()));
+      scheduleFlush(backoff);
+      return;
+    } catch (RuntimeException e) {
+      // Not a failed send that retrying would fix, e.g. missing credentials; don't let it end the
+      // flush task either, or nothing would ever be sent again
+      logger.logErr(String.format("%s Dropping Twitter digest of %d event(s), send threw: %s",
+          Utils.nowString(), batch.size(), e));
+      failedAttempts = 0;
+    }
+
+    synchronized (pendingEvents) {
+      if (pendingEvents.isEmpty()) {
+        flushScheduled = false;
+      } else {
+        scheduleFlush(Duration.ZERO);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    sendExecutor.shutdownNow();
+  }
+}
@@ -0,0 +1,438 @@
+package dong.anqi.grocery;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A bounded set of browsers shared by all checkers. Checkers borrow a browser through
+ * {@link #lease(Tenant, BrowserProfile, Consumer)} for the length of one check, so the number of
+ * live Chrome processes scales with the number of concurrent checks rather than with the number
+ * of checkers.
+ * <p>
+ * Each browser is started with a {@link BrowserProfile}, and only leased out for that profile.
+ * Browser state is partitioned by {@link Tenant}. A tenant that gets back the browser it last used
+ * keeps its cookies as-is; otherwise the previous tenant's state is saved and wiped before the new
+ * tenant's state is restored.
+ * <p>
+ * Browsers that crash, or that the {@link BrowserSupervisor} finds worn out when they're returned,
+ * are closed rather than pooled again, and a fresh one is started the next time one is needed.
+ */
+public class WebDriverPool implements AutoCloseable {
+  /** Owner of browser state (cookies, storage) that must survive moving between browsers. */
+  public interface Tenant {
+    /** Captures this tenant's state from a browser it has been using. */
+    void saveSession(RemoteWebDriver driver);
+    /** Loads this tenant's last saved state into a browser. */
+    void restoreSession(RemoteWebDriver driver);
+    /** Removes this tenant's state from a browser before it is handed to someone else. */
+    void clearSession(RemoteWebDriver driver);
+    /**
+     * Counts changes to this tenant's state made in one browser that others don't have yet, e.g.
+     * logins. A browser holding an older generation's state never saves over a newer one.
+     */
+    long getGeneration();
+  }
+
+  private static class PooledDriver {
+    final RemoteWebDriver driver;
+    final BrowserProfile profile;
+    final BrowserSupervisor.Record health = new BrowserSupervisor.Record();
+    Tenant lastTenant = null;
+    /** {@link Tenant#getGeneration()} of the state {@link #lastTenant} has in this browser. */
+    volatile long tenantGeneration = 0;
+    Instant idleSince = Instant.now();
+
+    PooledDriver(RemoteWebDriver driver, BrowserProfile profile) {
+      this.driver = driver;
+      this.profile = profile;
+    }
+  }
+
+  /** A borrowed browser. Must be closed to hand the browser back to the pool. */
+  public final class Lease implements AutoCloseable {
+    /** Set as soon as checkout picks or starts a browser, before it's switched to the tenant. */
+    private volatile PooledDriver pooled = null;
+    private boolean suspect = false;
+    private boolean failed = false;
+    private boolean returned = false;
+    private volatile boolean recycled = false;
+
+    private Lease() {}
+
+    /** Hands {@code pooled} to the lease, unless the lease was recycled while checking out. */
+    private void assign(PooledDriver pooled) {
+      this.pooled = pooled;
+      if (recycled) {
+        throw new WebDriverException("Lease was recycled while checking out");
+      }
+    }
+
+    public RemoteWebDriver driver() {
+      return pooled.driver;
+    }
+
+    /** Flags the browser as possibly broken, so that it is health-checked when returned. */
+    public void markSuspect() {
+      suspect = true;
+    }
+
+    /**
+     * Notes that the browser now holds its tenant's state as of {@code generation}, e.g. because
+     * the tenant logged in in it.
+     */
+    public void setTenantGeneration(long generation) {
+      pooled.tenantGeneration = generation;
+    }
+
+    /** Notes that the check came to nothing; see {@link BrowserSupervisor}. */
+    public void markFailed() {
+      failed = true;
+    }
+
+    /**
+     * Quits the browser out from under the lease holder, e.g. because its check is stuck in it.
+     * Any WebDriver call the holder is blocked in fails, and the browser isn't pooled again. May
+     * be called from any thread, including while the lease is still being checked out, which then
+     * fails; otherwise the lease must still be closed by its holder.
+     */
+    public void recycle() {
+      recycled = true;
+      PooledDriver pooled = this.pooled;
+      if (pooled != null) {
+        quitQuietly(pooled.driver);
+      }
+    }
+
+    /** @return Why the browser should be replaced rather than pooled again, if it should. */
+    private Optional<String> checkHealth() {
+      if (recycled) {
+        return Optional.of("a check was stuck in it");
+      }
+      if (suspect && !isAlive(pooled.driver)) {
+        return Optional.of("it crashed");
+      }
+
+      Optional<String> replaceReason =
+          supervisor.afterCheck(pooled.health, pooled.driver, suspect || failed);
+      if (replaceReason.isPresent() && !closed) {
+        // Unlike after a crash, the browser still has the tenant's latest session to hand on
+        saveSessionQuietly(pooled);
+      }
+      return replaceReason;
+    }
+
+    @Override
+    public void close() {
+      if (returned) { return; }
+      returned = true;
+
+      Optional<String> replaceReason = Optional.empty();
+      try {
+        replaceReason = checkHealth();
+        replaceReason.ifPresent(reason -> logger.log(String.format(
+            "%s Replacing a browser since %s", Utils.nowString(), reason)));
+      } finally {
+        release(pooled, replaceReason);
+      }
+    }
+  }
+
+  private final int maxSize;
+  private final Duration idleTimeout;
+  private final boolean headless;
+  private final Duration pageTimeout;
+  private final BrowserSupervisor supervisor;
+  private final Logger logger;
+
+  /** One permit per browser that may be leased out at once. */
+  private final Semaphore leasePermits;
+
+  /** Most recently returned browsers first. Guarded by itself. */
+  private final Deque<PooledDriver> idleDrivers = new LinkedList<>();
+
+  private final ScheduledExecutorService evictionExecutor =
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "driver-pool-evictor");
+        t.setDaemon(true);
+        return t;
+      });
+
+  private volatile boolean closed = false;
+
+  /**
+   * @param headless    Whether to run Chrome without a window. Headed mode is mostly useful for
+   *                    watching a checker misbehave.
+   * @param pageTimeout How long browsers wait for a page to load, or for an async script to
+   *                    finish, before failing with a
+   *                    {@link org.openqa.selenium.TimeoutException}.
+   */
+  public WebDriverPool(int maxSize, Duration idleTimeout, boolean headless, Duration pageTimeout,
+      BrowserSupervisor supervisor, Logger logger) {
+    if (maxSize < 1) { throw new IllegalArgumentException("Pool needs at least one browser"); }
+    if (pageTimeout == null || supervisor == null || logger == null) {
+      throw new NullPointerException();
+    }
+
+    this.maxSize = maxSize;
+    this.idleTimeout = idleTimeout;
+    this.headless = headless;
+    this.pageTimeout = pageTimeout;
+    this.supervisor = supervisor;
+    this.logger = logger;
+    this.leasePermits = new Semaphore(maxSize, true);
+
+    long sweepSeconds = Math.max(1, idleTimeout.getSeconds() / 4);
+    evictionExecutor.scheduleWithFixedDelay(
+        this::evictIdleDrivers, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+  }
+
+  public int getMaxSize() { return maxSize; }
+
+  public boolean isHeadless() { return headless; }
+
+  private PooledDriver createDriver(BrowserProfile profile) {
+    ChromeOptions chromeOptions = new ChromeOptions();
+    if (headless) {
+      // Sites lay out differently (or not at all) in the default 800x600 headless window
+      chromeOptions.addArguments("--headless", "--disable-gpu", "--window-size=1920,1080");
+    }
+    profile.apply(chromeOptions);
+    RemoteWebDriver driver = new ChromeDriver(chromeOptions);
+    // WebDriver waits five minutes for a page load by default, longer than a whole check should
+    driver.manage().timeouts()
+        .pageLoadTimeout(pageTimeout.toMillis(), TimeUnit.MILLISECONDS)
+        .setScriptTimeout(pageTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    return new PooledDriver(driver, profile);
+  }
+
+  /**
+   * Starts up to {@code count} browsers ahead of the first checks, in parallel, so that the first
+   * checks don't each wait out a Chrome launch. Returns right away; browsers join the pool as they
+   * come up. Never starts more browsers than the pool may have leased at once.
+   */
+  public void warmUp(int count, BrowserProfile profile) {
+    for (int i = 0; i < Math.min(count, maxSize); i++) {
+      // Held while launching, so that checks and warm-up together stay within the pool's size
+      if (!leasePermits.tryAcquire()) { break; }
+
+      Thread t = new Thread(() -> {
+        PooledDriver pooled;
+        try {
+          pooled = createDriver(profile);
+        } catch (RuntimeException e) {
+          leasePermits.release();
+          logger.logErr(String.format("%s Browser failed to start during warm-up: %s",
+              Utils.nowString(), e.getMessage()));
+          return;
+        }
+        release(pooled, Optional.empty());
+      }, "driver-pool-warmup-" + i);
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+  /**
+   * Borrows a browser, blocking until one is free. The returned browser was started with
+   * {@code profile}, and holds {@code tenant}'s state.
+   *
+   * @param onCheckout Given the lease once a browser is free, before the browser is switched over
+   *                   to {@code tenant}, which can hang along with the browser; see
+   *                   {@link Lease#recycle()}.
+   */
+  public Lease lease(Tenant tenant, BrowserProfile profile, Consumer<Lease> onCheckout)
+      throws InterruptedException {
+    if (closed) { throw new IllegalStateException("Pool is closed"); }
+
+    leasePermits.acquire();
+    Lease lease = new Lease();
+    try {
+      onCheckout.accept(lease);
+      checkout(lease, tenant, profile);
+      return lease;
+    } catch (RuntimeException e) {
+      // Whatever browser the lease got is in no state to be pooled again
+      PooledDriver pooled = lease.pooled;
+      if (pooled != null && !lease.recycled) {
+        quitQuietly(pooled.driver);
+      }
+      leasePermits.release();
+      throw e;
+    }
+  }
+
+  private void checkout(Lease lease, Tenant tenant, BrowserProfile profile) {
+    PooledDriver pooled = null;
+    PooledDriver displaced = null;
+    synchronized (idleDrivers) {
+      for (PooledDriver candidate : idleDrivers) {
+        if (candidate.profile == profile &&
+            (candidate.lastTenant == tenant || pooled == null)) {
+          pooled = candidate;
+          if (candidate.lastTenant == tenant) { break; }
+        }
+      }
+      if (pooled != null) {
+        idleDrivers.remove(pooled);
+      } else if (idleDrivers.size() > leasePermits.availablePermits()) {
+        // A browser is about to be started. Every permit taken (this lease's included) stands for
+        // a browser in use, so the idle ones have to fit in the permits left; if they don't, close
+        // the least recently used one, which is of another profile
+        displaced = idleDrivers.pollLast();
+      }
+    }
+
+    if (displaced != null) {
+      saveSessionQuietly(displaced);
+      quitQuietly(displaced.driver);
+    }
+
+    // The tenant's own browser is reused as-is, unless another browser has since moved the
+    // tenant's state on
+    if (pooled != null &&
+        (pooled.lastTenant != tenant || pooled.tenantGeneration < tenant.getGeneration())) {
+      lease.assign(pooled);
+      try {
+        if (pooled.lastTenant != null && pooled.lastTenant != tenant) {
+          saveSessionIfCurrent(pooled);
+          pooled.lastTenant.clearSession(pooled.driver);
+        }
+        restoreSession(pooled, tenant);
+      } catch (WebDriverException e) {
+        if (lease.recycled) { throw e; }
+        logger.logErr(String.format("%s Pooled browser failed to switch tenants, replacing: %s",
+            Utils.nowString(), e.getMessage()));
+        quitQuietly(pooled.driver);
+        pooled = null;
+      }
+    }
+
+    if (pooled == null) {
+      pooled = createDriver(profile);
+      lease.assign(pooled);
+      restoreSession(pooled, tenant);
+    }
+
+    lease.assign(pooled);
+    pooled.lastTenant = tenant;
+  }
+
+  /** @param replaceReason Present if the browser should be closed instead of pooled again. */
+  private void release(PooledDriver pooled, Optional<String> replaceReason) {
+    try {
+      if (closed || replaceReason.isPresent()) {
+        quitQuietly(pooled.driver);
+        return;
+      }
+
+      pooled.idleSince = Instant.now();
+      synchronized (idleDrivers) {
+        idleDrivers.addFirst(pooled);
+      }
+    } finally {
+      leasePermits.release();
+    }
+  }
+
+  private static boolean isAlive(RemoteWebDriver driver) {
+    try {
+      driver.getCurrentUrl();
+      return true;
+    } catch (WebDriverException e) {
+      return false;
+    }
+  }
+
+  private void quitQuietly(RemoteWebDriver driver) {
+    try {
+      driver.quit();
+    } catch (WebDriverException e) {
+      logger.logErr(
+          String.format("%s Failed to quit browser: %s", Utils.nowString(), e.getMessage()));
+    }
+  }
+
+  private static void restoreSession(PooledDriver pooled, Tenant tenant) {
+    // Read first: a login elsewhere during the restore may or may not make it in
+    long generation = tenant.getGeneration();
+    tenant.restoreSession(pooled.driver);
+    pooled.tenantGeneration = generation;
+  }
+
+  /**
+   * Saves the last tenant's session from {@code pooled}, unless the tenant's state has moved on in
+   * another browser since {@code pooled} got it, in which case saving would undo that.
+   */
+  private static void saveSessionIfCurrent(PooledDriver pooled) {
+    if (pooled.lastTenant != null &&
+        pooled.tenantGeneration >= pooled.lastTenant.getGeneration()) {
+      pooled.lastTenant.saveSession(pooled.driver);
+    }
+  }
+
+  /** Saves the last tenant's session, ahead of the browser being closed. */
+  private void saveSessionQuietly(PooledDriver pooled) {
+    try {
+      saveSessionIfCurrent(pooled);
+    } catch (WebDriverException e) {
+      logger.logErr(String.format("%s Unable to save session of browser being closed: %s",
+          Utils.nowString(), e.getMessage()));
+    }
+  }
+
+  private void evictIdleDrivers() {
+    Instant cutoff = Instant.now().minus(idleTimeout);
+
+    List<PooledDriver> evicted = new ArrayList<>();
+    synchronized (idleDrivers) {
+      Iterator<PooledDriver> it = idleDrivers.iterator();
+      while (it.hasNext()) {
+        PooledDriver pooled = it.next();
+        if (pooled.idleSince.isBefore(cutoff)) {
+          it.remove();
+          evicted.add(pooled);
+        }
+      }
+    }
+
+    for (PooledDriver pooled : evicted) {
+      saveSessionQuietly(pooled);
+      quitQuietly(pooled.driver);
+    }
+
+    if (!evicted.isEmpty()) {
+      logger.log(String.format("%s Evicted %d idle browser(s)", Utils.nowString(), evicted.size()));
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    evictionExecutor.shutdownNow();
+
+    List<PooledDriver> remaining;
+    synchronized (idleDrivers) {
+      remaining = new ArrayList<>(idleDrivers);
+      idleDrivers.clear();
+    }
+    for (PooledDriver pooled : remaining) {
+      quitQuietly(pooled.driver);
+    }
+  }
+}
@@ -1,89 +1,169 @@
 package dong.anqi.grocery;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebElement;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class WeeeDateAvailableChecker extends AbstractGrocerySlotChecker {
   private final boolean showBundleBuy;
 
-  public WeeeDateAvailableChecker(boolean showBundleBuy, Logger logger) {
-    super("Weee", logger);
+  public WeeeDateAvailableChecker(boolean showBundleBuy, CheckerContext context) {
+    super("Weee", ImmutableSet.of(ORIGIN), context);
     this.showBundleBuy = showBundleBuy;
   }
 
-  @Override
-  public boolean currentlyHasSlot() {
-    return statusTracker.lastWasAvailable();
-  }
+  private static final String ORIGIN = SiteUrls.resolve("https://www.sayweee.com");
+  private static final String CONFIG_PAGE = ORIGIN + "/zh";
+  private static final String HOME_PAGE = ORIGIN + "/";
+
+  private static final Set<String> ACCEPTED_HOME_URLS = ImmutableSet.of(HOME_PAGE, ORIGIN);
 
-  private static final String CONFIG_PAGE = "https://www.sayweee.com/zh";
-  private static final String HOME_PAGE = "https://www.sayweee.com/";
+  private static final By ZIP_CODE_QUERY = By.id("zip_code");
+  private static final By DATE_SELECT_QUERY = By.id("date_select_header");
+  private static final String DATE_CELL_SELECTOR = "#date_list .week .date-cell";
+  private static final By DATE_CELL_QUERY = By.cssSelector(DATE_CELL_SELECTOR);
+  private static final ElementSnapshot.Spec DATE_CELL_SPEC =
+      new ElementSnapshot.Spec().attributes("data-url", "data-date");
 
-  private static final Set<String> ACCEPTED_HOME_URLS = ImmutableSet.of(
-      HOME_PAGE, "https://www.sayweee.com");
+  private static final Duration PAGE_LOAD_DEADLINE = Duration.ofSeconds(15);
 
-  private void executeConfig() {
-    driver.get(CONFIG_PAGE);
+  private boolean executeConfig() {
+    loadPage(CONFIG_PAGE);
     if (!driver.getCurrentUrl().equals(CONFIG_PAGE)) {
       log(String.format("URL navigated to %s, already configured?", driver.getCurrentUrl()));
+      return true;
     } else {
-      Utils.startInterruptibleSleep(Duration.ofSeconds(5));
+      awaitReady("config form", PAGE_LOAD_DEADLINE, PageReadiness.anyOf(
+          PageReadiness.elementPresent(ZIP_CODE_QUERY),
+          PageReadiness.elementPresent(DATE_SELECT_QUERY)));
 
-      if (driver.findElements(By.id("zip_code")).isEmpty() &&
-          !driver.findElements(By.id("date_select_header")).isEmpty()) {
+      if (driver.findElements(ZIP_CODE_QUERY).isEmpty() &&
+          !driver.findElements(DATE_SELECT_QUERY).isEmpty()) {
         log(String.format("URL is %s, but still configured?", driver.getCurrentUrl()));
       }
 
-      // TODO: Set values using JavascriptExecutor so we can run headless
-      driver.findElement(By.id("zip_code")).sendKeys("95134");
-      driver.findElement(By.id("zip_code")).submit();
+      fillField(ZIP_CODE_QUERY, "95134");
+      submitForm(ZIP_CODE_QUERY);
 
-      Utils.startInterruptibleSleep(Duration.ofSeconds(5));
+      boolean submitted = awaitReady("config submit", PAGE_LOAD_DEADLINE, PageReadiness.allOf(
+          PageReadiness.elementAbsent(ZIP_CODE_QUERY),
+          PageReadiness.settled()));
 
       log(String.format("URL %s after login attempt", driver.getCurrentUrl()));
+      return submitted;
     }
   }
 
-  private Stream<WebElement> getDeliveryDateDivs() {
-    return driver.findElement(By.id("date_list")).findElements(By.className("week")).stream()
-        .flatMap(el -> el.findElements(By.className("date-cell")).stream());
+  /**
+   * Picks the first date that can be ordered for, from snapshots of the date modal's cells taken
+   * with {@link #DATE_CELL_SPEC}.
+   */
+  static Optional<ElementSnapshot> findAvailableDate(
+      List<ElementSnapshot> dateCells, boolean showBundleBuy) {
+    // TODO may need to exclude .portal-pickup and only accept .portal-delivery
+    Optional<ElementSnapshot> dateCell = dateCells.stream()
+        .filter(el -> !el.hasClass("unavailable"))
+        .findFirst();
+    if (dateCell.isEmpty()) {
+      dateCell = dateCells.stream()
+          .filter(el -> !Strings.isNullOrEmpty(el.getAttribute("data-url").orElse(null)) &&
+              (showBundleBuy || !el.hasClass("has-bundle")))
+          .findFirst();
+    }
+    return dateCell;
   }
 
-  private static List<String> getClasses(WebElement el) {
-    return Arrays.asList(el.getAttribute("class").split("\\s+"));
+  private static final Pattern DATE_CELL_TAG =
+      Pattern.compile("<div\\b[^>]*\\bclass=\"([^\"]*\\bdate-cell\\b[^\"]*)\"[^>]*>");
+  private static final Pattern DATE_CELL_ATTRIBUTE =
+      Pattern.compile("\\b(data-url|data-date)=\"([^\"]*)\"");
+
+  /** Finds the date modal's cells in the home page's server-rendered HTML. */
+  static List<ElementSnapshot> parseDateCells(String html) {
+    List<ElementSnapshot> cells = new ArrayList<>();
+    Matcher tag = DATE_CELL_TAG.matcher(html);
+    while (tag.find()) {
+      Map<String, String> attributes = new HashMap<>();
+      Matcher attribute = DATE_CELL_ATTRIBUTE.matcher(tag.group());
+      while (attribute.find()) {
+        attributes.put(attribute.group(1), attribute.group(2));
+      }
+      cells.add(new ElementSnapshot("div", "", Arrays.asList(tag.group(1).split("\\s+")),
+          attributes, ImmutableMap.of(), ImmutableList.of(), ImmutableList.of(), null));
+    }
+    return cells;
   }
 
-  private StatusTracker statusTracker = new StatusTracker();
+  @Override
+  protected Optional<HttpFastPath.Probe> createFastPathProbe() {
+    return Optional.of(new HttpFastPath.Probe() {
+      @Override
+      public String url() {
+        return HOME_PAGE;
+      }
+
+      @Override
+      public HttpFastPath.Observation parse(String body) throws HttpFastPath.UnavailableException {
+        if (!body.contains("id=\"date_list\"")) {
+          throw new HttpFastPath.UnavailableException("no date list in home page");
+        }
+        List<ElementSnapshot> dateCells = parseDateCells(body);
+        if (dateCells.isEmpty()) {
+          throw new HttpFastPath.UnavailableException("no date cells in home page");
+        }
+
+        return findAvailableDate(dateCells, showBundleBuy)
+            .map(el -> new HttpFastPath.Observation(StatusTracker.State.HAS_SLOT,
+                Optional.of("Spots available for " + el.getAttribute("data-date").orElse("")),
+                Optional.empty(), el.getAttribute("data-date")))
+            .orElseGet(() ->
+                new HttpFastPath.Observation(StatusTracker.State.NO_SLOT, Optional.empty()));
+      }
+    });
+  }
+
+  // Only the date cells' classes are read
+  @Override
+  protected BrowserProfile getBrowserProfile() {
+    return BrowserProfile.LEAN;
+  }
 
   @Override
-  public Optional<Status> doCheck() {
-    driver.get(HOME_PAGE);
+  protected Optional<Status> runCheck() {
+    loadPage(HOME_PAGE);
     if (!ACCEPTED_HOME_URLS.contains(driver.getCurrentUrl()) ||
         driver.manage().getCookies().isEmpty()) {
       log(String.format("URL navigated to %s, %d cookies, retrying login?",
           driver.getCurrentUrl(), driver.manage().getCookies().size()));
 
-      executeConfig();
+      // Weee has no login; setting the zip code is what stands in for one
+      login(this::executeConfig);
 
       // This is necessary for Weee, in order to clear an onboarding modal
-      driver.get(HOME_PAGE);
+      loadPage(HOME_PAGE);
     }
 
-    // TODO this should be a page loaded waiter in case site is bogged down
-    Utils.startInterruptibleSleep(Duration.ofSeconds(5));
+    awaitReady("home page", PAGE_LOAD_DEADLINE, PageReadiness.allOf(
+        PageReadiness.elementPresent(DATE_SELECT_QUERY),
+        PageReadiness.settled()));
 
     // Open the availability dates modal
     {
-      List<WebElement> dateSelectElement = driver.findElements(By.id("date_select_header"));
+      List<WebElement> dateSelectElement = driver.findElements(DATE_SELECT_QUERY);
       if (dateSelectElement.isEmpty()) {
         logErr("No date select button found");
         return Optional.empty();
@@ -96,26 +176,25 @@ public class WeeeDateAvailableChecker extends AbstractGrocerySlotChecker {
       dateSelectElement.get(0).click();
     }
 
-    Utils.startInterruptibleSleep(Duration.ofSeconds(3));
+    awaitReady("date modal", PAGE_LOAD_DEADLINE, PageReadiness.allOf(
+        PageReadiness.elementPresent(DATE_CELL_QUERY),
+        PageReadiness.settled()));
 
-    // TODO may need to exclude .portal-pickup and only accept .portal-delivery
-    Optional<WebElement> dateElement = getDeliveryDateDivs()
-        .filter(el -> !(getClasses(el).contains("unavailable")))
-        .findFirst();
-    if (dateElement.isEmpty()) {
-      dateElement = getDeliveryDateDivs()
-          .filter(el -> !Strings.isNullOrEmpty(el.getAttribute("data-url")) &&
-              (showBundleBuy || !getClasses(el).contains("has-bundle")))
-          .findFirst();
+    List<ElementSnapshot> dateCells = extract(DATE_CELL_SELECTOR, DATE_CELL_SPEC);
+    if (dateCells.isEmpty()) {
+      logErr("No delivery dates found");
+      return Optional.empty();
     }
+    Optional<ElementSnapshot> dateElement = findAvailableDate(dateCells, showBundleBuy);
 
     Status status = statusTracker.update(dateElement.isPresent() ?
         StatusTracker.State.HAS_SLOT :
         StatusTracker.State.NO_SLOT);
 
     dateElement.ifPresentOrElse(el -> {
-      String message = "Spots available for " + el.getAttribute("data-date");
+      String message = "Spots available for " + el.getAttribute("data-date").orElse("");
       status.notificationMessage = Optional.of(message);
+      status.earliestWindow = el.getAttribute("data-date");
       log(message);
     }, () -> {
       status.notificationMessage = Optional.empty();